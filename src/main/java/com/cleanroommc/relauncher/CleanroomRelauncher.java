@@ -5,11 +5,19 @@ import com.cleanroommc.javautils.api.JavaVersion;
 import com.cleanroommc.relauncher.config.RelauncherConfiguration;
 import com.cleanroommc.relauncher.download.CleanroomRelease;
 import com.cleanroommc.relauncher.download.GlobalDownloader;
+import com.cleanroommc.relauncher.download.cache.CacheLeases;
+import com.cleanroommc.relauncher.download.cache.CacheScrubber;
+import com.cleanroommc.relauncher.download.cache.CacheUsage;
 import com.cleanroommc.relauncher.download.cache.CleanroomCache;
+import com.cleanroommc.relauncher.download.cache.NativesStore;
 import com.cleanroommc.relauncher.download.java.JavaDownloader;
+import com.cleanroommc.relauncher.download.java.JavaInstallReceipt;
 import com.cleanroommc.relauncher.download.schema.Version;
 import com.cleanroommc.relauncher.gui.RelauncherGUI;
 import com.cleanroommc.relauncher.gui.SetupProgressDialog;
+import com.cleanroommc.relauncher.launch.BackgroundPrefetch;
+import com.cleanroommc.relauncher.launch.ClassDataSharing;
+import com.cleanroommc.relauncher.launch.LaunchPlan;
 import com.cleanroommc.relauncher.download.CalculationUtilities;
 import com.google.gson.Gson;
 import net.minecraft.launchwrapper.Launch;
@@ -20,15 +28,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.util.ProcessIdUtil;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import java.io.*;
 import java.lang.management.ManagementFactory;
 import java.nio.file.*;
 import java.util.*;
 import java.util.jar.Manifest;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class CleanroomRelauncher {
@@ -41,48 +46,6 @@ public class CleanroomRelauncher {
 
     public CleanroomRelauncher() { }
 
-    private static Integer extractTemurinMajorFromPath(String javaPath) {
-        if (javaPath == null || javaPath.isEmpty()) return null;
-        String normalized = javaPath.replace('\\', '/');
-        try {
-            Pattern pat = Pattern.compile("(temurin|graalvm)-(\\d+)-(windows|linux|mac)-(x64|aarch64)", Pattern.CASE_INSENSITIVE);
-            Matcher m = pat.matcher(normalized);
-            if (m.find()) {
-                return Integer.parseInt(m.group(2));
-            }
-        } catch (Throwable ignored) {
-        }
-        return null;
-    }
-
-    private static String extractVendorFromPath(String javaPath) {
-        if (javaPath == null || javaPath.isEmpty()) return null;
-        String normalized = javaPath.replace('\\', '/');
-        try {
-            Pattern pat = Pattern.compile("(temurin|graalvm)-(\\d+)-(windows|linux|mac)-(x64|aarch64)", Pattern.CASE_INSENSITIVE);
-            Matcher m = pat.matcher(normalized);
-            if (m.find()) {
-                return normalizeVendorName(m.group(1).toLowerCase(Locale.ROOT));
-            }
-        } catch (Throwable ignored) {
-        }
-        return null;
-    }
-
-    private static String extractArchFromPath(String javaPath) {
-        if (javaPath == null || javaPath.isEmpty()) return null;
-        String normalized = javaPath.replace('\\', '/');
-        try {
-            Pattern pat = Pattern.compile("(temurin|graalvm)-(\\d+)-(windows|linux|mac)-(x64|aarch64)", Pattern.CASE_INSENSITIVE);
-            Matcher m = pat.matcher(normalized);
-            if (m.find()) {
-                return m.group(4).toLowerCase(Locale.ROOT);
-            }
-        } catch (Throwable ignored) {
-        }
-        return null;
-    }
-
     public static String detectCurrentArch() {
         String osName = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
 
@@ -133,6 +96,78 @@ public class CleanroomRelauncher {
         return (arch.contains("aarch64") || arch.contains("arm64")) ? "aarch64" : "x64";
     }
 
+    /**
+     * @return what the game of this launch runs from in the cache: the release, its libraries and natives, and the
+     * Java install
+     */
+    private static List<Path> pathsInUse(CleanroomCache releaseCache, LaunchPlan plan, String javaPath) {
+        Path javaDir = CACHE_DIR.resolve("java");
+        List<Path> inUse = new ArrayList<>();
+        inUse.add(releaseCache.getDirectory());
+        plan.libraryPaths().forEach(path -> inUse.add(Paths.get(path)));
+        plan.nativesPaths().forEach(path -> inUse.add(Paths.get(path)));
+        Path javaInstall = Paths.get(javaPath).toAbsolutePath();
+        if (javaInstall.startsWith(javaDir.toAbsolutePath())) {
+            String install = javaDir.toAbsolutePath().relativize(javaInstall).getName(0).toString();
+            String jdk = install.endsWith("-runtime") ? install.substring(0, install.length() - "-runtime".length()) : install;
+            // A trimmed runtime image and the JDK it was linked from go together
+            inUse.add(javaDir.resolve(jdk));
+            inUse.add(javaDir.resolve(jdk + "-runtime"));
+        }
+        return inUse;
+    }
+
+    /**
+     * Starts the work for the next launch that runs while the game does: recording what this launch used,
+     * refreshing a release list this launch took from the cache, hashing the cache in full, creating the AOT cache an
+     * earlier launch trained on Java 24, downloading the newest Cleanroom release with its libraries, the Java version
+     * that release requires and the patch update of the Java in use, and finally trimming the cache.
+     */
+    private static BackgroundPrefetch startBackgroundWork(CleanroomCache releaseCache, LaunchPlan plan, List<Path> inUse,
+                                                          ClassDataSharing classDataSharing, boolean refreshReleases, CleanroomRelease latestRelease, CleanroomRelease selected,
+                                                          String javaPath, int javaVersion, String javaVendor) {
+        Path javaDir = CACHE_DIR.resolve("java");
+        Path javaInstall = Paths.get(javaPath).toAbsolutePath();
+        BackgroundPrefetch prefetch = new BackgroundPrefetch();
+        prefetch.add("cache usage", () -> CacheUsage.markUsed(inUse));
+        if (refreshReleases) {
+            prefetch.add("release list", CleanroomRelease::queryAll);
+        }
+        if (CONFIG.isScrubCache()) {
+            prefetch.add("cache scrub", () -> {
+                List<CacheScrubber.Expected> expected = new ArrayList<>();
+                for (Version version : releaseCache.versions()) {
+                    expected.addAll(version.cachedFiles(releaseCache.getLibrariesDirectory(), releaseCache.getNativesDirectory()));
+                }
+                plan.nativesPaths().forEach(path -> expected.addAll(NativesStore.linked(Paths.get(path))));
+                expected.addAll(JavaDownloader.installedFiles(javaDir));
+                CacheScrubber.scrub(expected);
+            });
+        }
+        if (classDataSharing != null && classDataSharing.hasRecorded()) {
+            prefetch.add("AOT cache", classDataSharing::createRecorded);
+        }
+        if (CONFIG.isBackgroundPrefetch() && !latestRelease.name.equals(selected.name)) {
+            prefetch.add("Cleanroom " + latestRelease.name, () -> CleanroomCache.of(latestRelease).download());
+            if (isCleanroomVersionAtLeast(latestRelease.name, 0, 5) && javaVersion < 25) {
+                prefetch.add("Java 25", () -> JavaDownloader.prefetch(javaDir, 25, javaVendor));
+            }
+        }
+        // Only the relauncher's own installs are kept up to date
+        if (CONFIG.isBackgroundPrefetch() && javaInstall.startsWith(javaDir.toAbsolutePath())) {
+            prefetch.add("Java " + javaVersion + " update", () -> JavaDownloader.prefetch(javaDir, javaVersion, javaVendor));
+        }
+        // Last, so it counts what was prefetched and comes after the scrub has read the cache anyway
+        long cacheSizeLimit = CONFIG.getCacheSizeLimit() * 1024L * 1024L;
+        if (cacheSizeLimit > 0) {
+            List<Path> keep = new ArrayList<>(inUse);
+            keep.add(CleanroomCache.of(latestRelease).getDirectory());
+            prefetch.add("cache size", () -> CacheUsage.collect(cacheSizeLimit, keep));
+        }
+        prefetch.start(CONFIG.getPrefetchBandwidthLimit() * 1024L);
+        return prefetch;
+    }
+
     private static String normalizeVendorName(String vendor) {
         if (vendor == null || vendor.isEmpty()) return "adoptium";
         String lower = vendor.toLowerCase(Locale.ROOT);
@@ -250,6 +285,74 @@ public class CleanroomRelauncher {
         }
     }
 
+    /**
+     * Downloads and checks the release's libraries, extracts its natives and the wrapper, and records the result as
+     * the {@link LaunchPlan} later launches start from.
+     */
+    private static LaunchPlan prepare(CleanroomRelease selected, CleanroomCache releaseCache, String javaPath,
+                                      AtomicReference<SetupProgressDialog> setupDialogRef) {
+        LOGGER.info("Preparing Cleanroom v{} and its libraries...", selected.name);
+        SetupProgressDialog dlg = setupDialogRef.get();
+        if (dlg == null) {
+            dlg = SetupProgressDialog.show("Setting Up Necessary Libraries (Only Happens Once)");
+            setupDialogRef.set(dlg);
+        }
+        dlg.setMessage("Downloading Cleanroom libraries...");
+        dlg.setIndeterminate(false);
+        dlg.setProgressPercent(0);
+        final SetupProgressDialog finalDlg = dlg;
+        GlobalDownloader.INSTANCE.setProgressListener(new GlobalDownloader.TaskProgressListener() {
+            private int totalFiles = 0;
+            private long totalBytes = 0;
+            
+            @Override
+            public void onTotal(int totalFiles, long totalBytes) {
+                this.totalFiles = Math.max(1, totalFiles);
+                this.totalBytes = totalBytes;
+                finalDlg.setProgressPercent(0);
+            }
+            
+            @Override
+            public void onProgress(int completedFiles, int totalFiles, long downloadedBytes, long totalBytes, double speed, long eta) {
+                int pct = totalBytes > 0 
+                    ? (int) ((downloadedBytes * 100L) / totalBytes)
+                    : (int) ((completedFiles * 100.0f) / Math.max(1, totalFiles));
+                finalDlg.setProgressPercent(pct);
+                
+                if (totalBytes > 0 && speed > 0) {
+                    finalDlg.setMessage(String.format(
+                        "Downloading libraries - %d/%d files - %s - ETA: %s",
+                        completedFiles,
+                        totalFiles,
+                        CalculationUtilities.formatSpeed(speed),
+                        CalculationUtilities.formatETA(eta)
+                    ));
+                } else {
+                    finalDlg.setMessage(String.format(
+                        "Downloading libraries - %d/%d files",
+                        completedFiles,
+                        totalFiles
+                    ));
+                }
+            }
+        });
+        List<Version> versions = versions(releaseCache);
+        GlobalDownloader.INSTANCE.setProgressListener(null);
+        SetupProgressDialog closeDlg = setupDialogRef.getAndSet(null);
+        if (closeDlg != null) closeDlg.close();
+
+        String wrapperClassPath = getOrExtract();
+        if (CONFIG.isClassDataSharing()) {
+            try {
+                wrapperClassPath = ClassDataSharing.packDirectory(Paths.get(wrapperClassPath)).toString();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to pack the wrapper into a jar, class data sharing will skip it: {}", e.toString());
+            }
+        }
+
+        return LaunchPlan.record(selected, javaPath, wrapperClassPath, versions);
+    }
+
     static void run() {
         if (isCleanroom()) {
             LOGGER.info("Cleanroom detected. No need to relaunch!");
@@ -264,7 +367,12 @@ public class CleanroomRelauncher {
 
         replaceCerts();
 
-        List<CleanroomRelease> releases = releases();
+        // A release that was launched before starts from the cached release list, which is refreshed while the game runs
+        List<CleanroomRelease> releases = LaunchPlan.isRecorded(CONFIG.getCleanroomVersion()) ? CleanroomRelease.queryCached() : null;
+        boolean refreshReleases = releases != null;
+        if (releases == null) {
+            releases = releases();
+        }
         CleanroomRelease latestRelease = releases.get(0);
 
         LOGGER.info("{} cleanroom releases were queried.", releases.size());
@@ -282,6 +390,10 @@ public class CleanroomRelauncher {
         } else if (selectedVersion != null) {
             selected = releases.stream().filter(cr -> cr.name.equals(selectedVersion)).findFirst().orElse(null);
         }
+        // Damaged files found and Java updates prefetched during the last session; nothing uses them right now
+        CacheScrubber.quarantinePending();
+        JavaDownloader.applyPendingUpdates(CACHE_DIR.resolve("java"));
+        JavaDownloader.cleanupStalePartialFiles(CACHE_DIR.resolve("java"));
         if (javaPath != null && !new File(javaPath).isFile()) {
             javaPath = null;
         }
@@ -302,17 +414,18 @@ public class CleanroomRelauncher {
         }
         final int desiredJava = configuredJava;
         String desiredVendor = normalizeVendorName(CONFIG.getJavaVendor());
-        Integer currentJavaFromPath = extractTemurinMajorFromPath(javaPath);
+        JavaInstallReceipt currentJava = javaPath == null ? null : JavaInstallReceipt.ofExecutable(Paths.get(javaPath));
+        Integer currentJavaFromPath = currentJava == null ? null : currentJava.majorVersion();
         if (javaPath != null && (currentJavaFromPath == null || currentJavaFromPath.intValue() != desiredJava)) {
             LOGGER.info("Configured Java version {} differs from current Java path ({}). Switching to {} {}...", desiredJava, javaPath, desiredVendor, desiredJava);
             javaPath = null; // trigger auto-setup to fetch the desired Java version
         }
-        String currentVendorFromPath = normalizeVendorName(extractVendorFromPath(javaPath));
+        String currentVendorFromPath = normalizeVendorName(currentJava == null ? null : currentJava.vendor());
         if (javaPath != null && currentVendorFromPath != null && !currentVendorFromPath.equalsIgnoreCase(desiredVendor)) {
             LOGGER.info("Configured Java vendor '{}' differs from current vendor '{}' at {}. Switching vendor and re-downloading if necessary...", desiredVendor, currentVendorFromPath, javaPath);
             javaPath = null; // trigger auto-setup to fetch the desired vendor distribution
         }
-        String currentArchFromPath = extractArchFromPath(javaPath);
+        String currentArchFromPath = currentJava == null ? null : currentJava.arch();
         String currentArch = detectCurrentArch();
         if (javaPath != null && currentArchFromPath != null && !currentArchFromPath.equalsIgnoreCase(currentArch)) {
             LOGGER.info("Configured Java architecture '{}' differs from current hardware architecture '{}' at {}. Switching to native architecture and re-downloading...", currentArchFromPath, currentArch, javaPath);
@@ -563,69 +676,21 @@ public class CleanroomRelauncher {
 
         CleanroomCache releaseCache = CleanroomCache.of(selected);
 
-        LOGGER.info("Preparing Cleanroom v{} and its libraries...", selected.name);
-        SetupProgressDialog dlg = setupDialogRef.get();
-        if (dlg == null) {
-            dlg = SetupProgressDialog.show("Setting Up Necessary Libraries (Only Happens Once)");
-            setupDialogRef.set(dlg);
+        LaunchPlan plan = LaunchPlan.load(selected, javaPath);
+        if (plan != null) {
+            LOGGER.info("Cleanroom v{} is prepared as planned on its last launch", selected.name);
+            SetupProgressDialog closeDlg = setupDialogRef.getAndSet(null);
+            if (closeDlg != null) closeDlg.close();
+        } else {
+            plan = prepare(selected, releaseCache, javaPath, setupDialogRef);
         }
-        dlg.setMessage("Downloading Cleanroom libraries...");
-        dlg.setIndeterminate(false);
-        dlg.setProgressPercent(0);
-        final SetupProgressDialog finalDlg = dlg;
-        GlobalDownloader.INSTANCE.setProgressListener(new GlobalDownloader.TaskProgressListener() {
-            private int totalFiles = 0;
-            private long totalBytes = 0;
-            
-            @Override
-            public void onTotal(int totalFiles, long totalBytes) {
-                this.totalFiles = Math.max(1, totalFiles);
-                this.totalBytes = totalBytes;
-                finalDlg.setProgressPercent(0);
-            }
-            
-            @Override
-            public void onProgress(int completedFiles, int totalFiles, long downloadedBytes, long totalBytes, double speed, long eta) {
-                int pct = totalBytes > 0 
-                    ? (int) ((downloadedBytes * 100L) / totalBytes)
-                    : (int) ((completedFiles * 100.0f) / Math.max(1, totalFiles));
-                finalDlg.setProgressPercent(pct);
-                
-                if (totalBytes > 0 && speed > 0) {
-                    finalDlg.setMessage(String.format(
-                        "Downloading libraries - %d/%d files - %s - ETA: %s",
-                        completedFiles,
-                        totalFiles,
-                        CalculationUtilities.formatSpeed(speed),
-                        CalculationUtilities.formatETA(eta)
-                    ));
-                } else {
-                    finalDlg.setMessage(String.format(
-                        "Downloading libraries - %d/%d files",
-                        completedFiles,
-                        totalFiles
-                    ));
-                }
-            }
-        });
-        List<Version> versions = versions(releaseCache);
-        GlobalDownloader.INSTANCE.setProgressListener(null);
-        SetupProgressDialog closeDlg = setupDialogRef.getAndSet(null);
-        if (closeDlg != null) closeDlg.close();
-
-        String wrapperClassPath = getOrExtract();
 
         LOGGER.info("Preparing to relaunch Cleanroom v{}", selected.name);
         List<String> arguments = new ArrayList<>();
         arguments.add(javaPath);
 
         arguments.add("-cp");
-        String libraryClassPath = versions.stream()
-                .map(version -> version.libraryPaths)
-                .flatMap(Collection::stream)
-                .collect(Collectors.joining(File.pathSeparator));
-
-        String fullClassPath = wrapperClassPath + File.pathSeparator + libraryClassPath;
+        String fullClassPath = plan.classPath();
         arguments.add(fullClassPath); // Ensure this is not empty
 
         if (javaArgs != null && !javaArgs.isEmpty()) {
@@ -643,9 +708,14 @@ public class CleanroomRelauncher {
             // }
         }
 
+        ClassDataSharing classDataSharing = CONFIG.isClassDataSharing() ? ClassDataSharing.prepare(javaPath, fullClassPath, arguments) : null;
+        if (classDataSharing != null) {
+            arguments.addAll(classDataSharing.arguments());
+        }
+
         arguments.add("-Dcleanroom.relauncher.parent=" + ProcessIdUtil.getProcessId());
-        arguments.add("-Dcleanroom.relauncher.mainClass=" + versions.get(0).mainClass);
-        arguments.add("-Djava.library.path=" + versions.stream().map(version -> version.nativesPaths).flatMap(Collection::stream).collect(Collectors.joining(File.pathSeparator)));
+        arguments.add("-Dcleanroom.relauncher.mainClass=" + plan.mainClass());
+        arguments.add("-Djava.library.path=" + plan.libraryPath());
 
         arguments.add("com.cleanroommc.relauncher.wrapper.RelaunchMainWrapper");
 
@@ -667,11 +737,36 @@ public class CleanroomRelauncher {
         processBuilder.directory(null);
         processBuilder.inheritIO();
 
+        List<Path> inUse = pathsInUse(releaseCache, plan, javaPath);
+        // Keeps other instances from replacing or evicting any of it while the game runs
+        CacheLeases.Lease lease = null;
+        try {
+            lease = CacheLeases.take(inUse);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to record what this launch uses from the cache: {}", e.toString());
+        }
+
         try {
             Process process = processBuilder.start();
+            BackgroundPrefetch backgroundWork;
+            try {
+                backgroundWork = startBackgroundWork(releaseCache, plan, inUse, classDataSharing, refreshReleases, latestRelease,
+                        selected, javaPath, desiredJava, desiredVendor);
+            } catch (RuntimeException e) {
+                // The game is already running; losing the background work must not orphan it
+                LOGGER.warn("Unable to start background work, the next launch will do it instead", e);
+                backgroundWork = new BackgroundPrefetch();
+            }
 
             int exitCode = process.waitFor();
             LOGGER.info("Process exited with code: {}", exitCode);
+            backgroundWork.cancel();
+            if (classDataSharing != null) {
+                classDataSharing.afterExit(exitCode);
+            }
+            if (lease != null) {
+                lease.close();
+            }
             ExitVMBypass.exit(exitCode);
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
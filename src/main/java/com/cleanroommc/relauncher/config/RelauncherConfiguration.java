@@ -11,6 +11,9 @@ import net.minecraft.launchwrapper.Launch;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class RelauncherConfiguration {
 
@@ -49,6 +52,22 @@ public class RelauncherConfiguration {
     private boolean autoUpdate = false;
     @SerializedName("disableCacheTTL")
     private boolean disableCacheTTL = false;
+    @SerializedName("javaDownloadMirrors")
+    private List<String> javaDownloadMirrors = new ArrayList<>();
+    @SerializedName("reuseSystemJava")
+    private boolean reuseSystemJava = true;
+    @SerializedName("jlinkRuntime")
+    private boolean jlinkRuntime = false;
+    @SerializedName("classDataSharing")
+    private boolean classDataSharing = true;
+    @SerializedName("backgroundPrefetch")
+    private boolean backgroundPrefetch = true;
+    @SerializedName("prefetchBandwidthLimit")
+    private int prefetchBandwidthLimit = 4096;
+    @SerializedName("scrubCache")
+    private boolean scrubCache = true;
+    @SerializedName("cacheSizeLimit")
+    private int cacheSizeLimit = 0;
     @SerializedName("cacheDir")
     private String cacheDir = System.getProperty("user.home") + File.separator + ".cleanroom" + File.separator + "relauncher";
 
@@ -88,6 +107,44 @@ public class RelauncherConfiguration {
         return disableCacheTTL;
     }
 
+    public List<String> getJavaDownloadMirrors() {
+        return javaDownloadMirrors == null ? Collections.emptyList() : javaDownloadMirrors;
+    }
+
+    public boolean isReuseSystemJava() {
+        return reuseSystemJava;
+    }
+
+    public boolean isJlinkRuntime() {
+        return jlinkRuntime;
+    }
+
+    public boolean isClassDataSharing() {
+        return classDataSharing;
+    }
+
+    public boolean isBackgroundPrefetch() {
+        return backgroundPrefetch;
+    }
+
+    /**
+     * @return KiB per second background downloads may use, 0 for no limit
+     */
+    public int getPrefetchBandwidthLimit() {
+        return Math.max(0, prefetchBandwidthLimit);
+    }
+
+    public boolean isScrubCache() {
+        return scrubCache;
+    }
+
+    /**
+     * @return MiB the cache may grow to before least recently used entries are deleted, 0 for no limit
+     */
+    public int getCacheSizeLimit() {
+        return Math.max(0, cacheSizeLimit);
+    }
+
     public String getCacheDir() {
         if (cacheDir == null || cacheDir.trim().isEmpty()) {
             return System.getProperty("user.home") + File.separator + ".cleanroom" + File.separator + "relauncher";
@@ -131,6 +188,38 @@ public class RelauncherConfiguration {
         this.disableCacheTTL = disableCacheTTL;
     }
 
+    public void setJavaDownloadMirrors(List<String> javaDownloadMirrors) {
+        this.javaDownloadMirrors = javaDownloadMirrors;
+    }
+
+    public void setReuseSystemJava(boolean reuseSystemJava) {
+        this.reuseSystemJava = reuseSystemJava;
+    }
+
+    public void setJlinkRuntime(boolean jlinkRuntime) {
+        this.jlinkRuntime = jlinkRuntime;
+    }
+
+    public void setClassDataSharing(boolean classDataSharing) {
+        this.classDataSharing = classDataSharing;
+    }
+
+    public void setBackgroundPrefetch(boolean backgroundPrefetch) {
+        this.backgroundPrefetch = backgroundPrefetch;
+    }
+
+    public void setPrefetchBandwidthLimit(int prefetchBandwidthLimit) {
+        this.prefetchBandwidthLimit = prefetchBandwidthLimit;
+    }
+
+    public void setScrubCache(boolean scrubCache) {
+        this.scrubCache = scrubCache;
+    }
+
+    public void setCacheSizeLimit(int cacheSizeLimit) {
+        this.cacheSizeLimit = cacheSizeLimit;
+    }
+
     public void setCacheDir(String cacheDir) {
         this.cacheDir = cacheDir;
     }
@@ -177,6 +266,51 @@ public class RelauncherConfiguration {
             writer.write("  // Disable the cache TTL (Time To Live). If true, the list of Cleanroom releases won't be refetched if already cached." + nl);
             writer.write("  \"disableCacheTTL\": " + (isDisableCacheTTL() ? "true" : "false") + "," + nl);
 
+            // javaDownloadMirrors
+            writer.write("  // Extra origins to split Java downloads across, as URL templates. Placeholders: {vendor}, {major}, {os}, {arch}," + nl);
+            writer.write("  // {image}, {release} and {name} (archive file name). Mirrors serving a different file size are skipped." + nl);
+            writer.write("  \"javaDownloadMirrors\": [");
+            List<String> mirrors = getJavaDownloadMirrors();
+            for (int i = 0; i < mirrors.size(); i++) {
+                writer.write((i == 0 ? "" : ", ") + "\"" + escapeJson(mirrors.get(i)) + "\"");
+            }
+            writer.write("]," + nl);
+
+            // reuseSystemJava
+            writer.write("  // Before downloading Java, look for an installed one of the same version, vendor and architecture" + nl);
+            writer.write("  // (e.g. in /usr/lib/jvm, SDKMAN or Program Files) and use it in place. Default: true." + nl);
+            writer.write("  \"reuseSystemJava\": " + (isReuseSystemJava() ? "true" : "false") + "," + nl);
+
+            // jlinkRuntime
+            writer.write("  // When Java is only available as a full JDK, run the game on a jlink image built from it without the" + nl);
+            writer.write("  // development tools and debug info. The image is kept next to the JDK. Default: false." + nl);
+            writer.write("  \"jlinkRuntime\": " + (isJlinkRuntime() ? "true" : "false") + "," + nl);
+
+            // classDataSharing
+            writer.write("  // Keep a class data sharing archive (AppCDS on Java 21-23, AOT cache on Java 24+) for the relaunched game." + nl);
+            writer.write("  // The first launch after an update trains it; later launches start faster. Default: true." + nl);
+            writer.write("  \"classDataSharing\": " + (isClassDataSharing() ? "true" : "false") + "," + nl);
+
+            // backgroundPrefetch
+            writer.write("  // While the game runs, download the newest Cleanroom release, the Java it needs and Java patch updates" + nl);
+            writer.write("  // in the background, so the next launch does not wait for them. Default: true." + nl);
+            writer.write("  \"backgroundPrefetch\": " + (isBackgroundPrefetch() ? "true" : "false") + "," + nl);
+
+            // prefetchBandwidthLimit
+            writer.write("  // Bandwidth background downloads may use, in KiB/s. 0 means no limit. Default: 4096." + nl);
+            writer.write("  \"prefetchBandwidthLimit\": " + getPrefetchBandwidthLimit() + "," + nl);
+
+            // scrubCache
+            writer.write("  // While the game runs, fully hash cached libraries, natives and Java installs at a limited disk rate." + nl);
+            writer.write("  // Damaged files are quarantined on the next launch and fetched again. Default: true." + nl);
+            writer.write("  \"scrubCache\": " + (isScrubCache() ? "true" : "false") + "," + nl);
+
+            // cacheSizeLimit
+            writer.write("  // Size in MiB the cache may grow to. Beyond it, the releases, Java installs, libraries and natives" + nl);
+            writer.write("  // unused for the longest are deleted in the background, except what a running game uses." + nl);
+            writer.write("  // 0 means no limit. Default: 0." + nl);
+            writer.write("  \"cacheSizeLimit\": " + getCacheSizeLimit() + "," + nl);
+
             // cacheDir
             writer.write("  // Directory where downloaded files (Java, Cleanroom, etc.) will be cached." + nl);
             writer.write("  \"cacheDir\": " + (getCacheDir() == null ? "null" : ("\"" + escapeJson(getCacheDir()) + "\"")) + "," + nl);
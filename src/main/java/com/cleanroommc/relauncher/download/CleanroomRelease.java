@@ -55,6 +55,23 @@ public class CleanroomRelease {
         }
     }
 
+    /**
+     * @return the cached releases however old they are, or null if there are none; for launches that must not wait
+     * on GitHub, which refresh the cache through {@link #queryAll()} afterwards
+     */
+    public static List<CleanroomRelease> queryCached() {
+        if (!Files.exists(CACHE_FILE)) {
+            return null;
+        }
+        try {
+            List<CleanroomRelease> releases = fetchReleasesFromCache(CACHE_FILE);
+            return releases == null || releases.isEmpty() ? null : releases;
+        } catch (IOException | RuntimeException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to read cached releases.json: {}", e.toString());
+            return null;
+        }
+    }
+
     private static List<CleanroomRelease> fetchReleasesFromGithub() throws IOException {
         try {
             URL url = new URL("https://api.github.com/repos/CleanroomMC/Cleanroom/releases");
@@ -0,0 +1,78 @@
+package com.cleanroommc.relauncher.download;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A process-wide bandwidth limit and kill switch for downloads. Unlimited unless a caller sets a rate, which is how
+ * background work keeps its traffic from competing with the game.
+ */
+public final class DownloadThrottle {
+
+    private static final Object LOCK = new Object();
+    private static volatile long bytesPerSecond;
+    private static volatile boolean cancelled;
+    private static long nextFreeAt;
+
+    private DownloadThrottle() { }
+
+    /**
+     * @param limit bytes per second shared by every download, or 0 for no limit
+     */
+    public static void limit(long limit) {
+        synchronized (LOCK) {
+            bytesPerSecond = Math.max(0L, limit);
+            nextFreeAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Makes every download in progress fail at its next read. Partial files stay behind and are resumed later.
+     */
+    public static void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Lifts both the limit and a cancellation.
+     */
+    public static void reset() {
+        cancelled = false;
+        limit(0L);
+    }
+
+    public static boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Called after reading {@code bytes}; sleeps for as long as the limit requires.
+     */
+    public static void acquire(int bytes) throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Download cancelled");
+        }
+        long rate = bytesPerSecond;
+        if (rate <= 0 || bytes <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (LOCK) {
+            long now = System.nanoTime();
+            nextFreeAt = Math.max(nextFreeAt, now) + bytes * 1_000_000_000L / rate;
+            waitNanos = nextFreeAt - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Download interrupted");
+            }
+        }
+        if (cancelled) {
+            throw new InterruptedIOException("Download cancelled");
+        }
+    }
+
+}
@@ -1,6 +1,9 @@
 package com.cleanroommc.relauncher.download;
 
 import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.cleanroommc.relauncher.download.cache.VerificationLedger;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.*;
 import java.net.HttpURLConnection;
@@ -8,6 +11,7 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -40,6 +44,14 @@ public final class GlobalDownloader {
     }
 
     public void from(String source, File destination) {
+        from(source, destination, null);
+    }
+
+    /**
+     * Queues a download whose content is checked against {@code sha1} while it streams, and recorded as verified
+     * so the cached file is not hashed again on later launches.
+     */
+    public void from(String source, File destination, String sha1) {
         String destPath = destination.getAbsolutePath();
         
         synchronized (queuedFiles) {
@@ -50,7 +62,7 @@ public final class GlobalDownloader {
             queuedFiles.add(destPath);
         }
         
-        DownloadTask task = new DownloadTask(source, destination);
+        DownloadTask task = new DownloadTask(source, destination, sha1);
         downloadTasks.add(task);
     }
 
@@ -66,7 +78,7 @@ public final class GlobalDownloader {
         }
 
         try {
-            downloadFile(source, destination.toPath(), MAX_RETRIES, null);
+            downloadFile(source, destination.toPath(), null, MAX_RETRIES, null);
             CleanroomRelauncher.LOGGER.debug("Downloaded {} to {}", source, destPath);
         } catch (IOException e) {
             throw new RuntimeException(String.format("Unable to download %s to %s", source, destination), e);
@@ -133,7 +145,7 @@ public final class GlobalDownloader {
         for (DownloadTask task : downloadTasks) {
             futures.add(executor.submit(() -> {
                 try {
-                    downloadFile(task.source, task.destination.toPath(), MAX_RETRIES, progressCallback);
+                    downloadFile(task.source, task.destination.toPath(), task.sha1, MAX_RETRIES, progressCallback);
                     int nowCompleted = completed.incrementAndGet();
                     int percentage = (nowCompleted * 100) / totalTasks;
                     
@@ -177,6 +189,7 @@ public final class GlobalDownloader {
             Thread.currentThread().interrupt();
         }
 
+        VerificationLedger.save();
         CleanroomRelauncher.LOGGER.info("All {} library files downloaded successfully", totalTasks);
         
         downloadTasks.clear();
@@ -206,7 +219,7 @@ public final class GlobalDownloader {
         return -1;
     }
 
-    private static void downloadFile(String urlStr, Path dest, int maxRetries, ProgressCallback progressCallback) throws IOException {
+    private static void downloadFile(String urlStr, Path dest, String sha1, int maxRetries, ProgressCallback progressCallback) throws IOException {
         IOException lastException = null;
         
         for (int attempt = 0; attempt <= maxRetries; attempt++) {
@@ -233,6 +246,7 @@ public final class GlobalDownloader {
                     } catch (Exception ignore) {}
                     
                     Path temp = dest.resolveSibling(dest.getFileName().toString() + ".tmp");
+                    MessageDigest digest = sha1 == null ? null : DigestUtils.getSha1Digest();
                     try (InputStream in = new BufferedInputStream(conn.getInputStream());
                          OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
                         byte[] buffer = new byte[8192];
@@ -240,7 +254,11 @@ public final class GlobalDownloader {
                         long downloaded = 0;
                         while ((n = in.read(buffer)) >= 0) {
                             out.write(buffer, 0, n);
+                            if (digest != null) {
+                                digest.update(buffer, 0, n);
+                            }
                             downloaded += n;
+                            DownloadThrottle.acquire(n);
                             if (progressCallback != null) {
                                 progressCallback.onProgress(n);
                             }
@@ -250,8 +268,16 @@ public final class GlobalDownloader {
                             throw new IOException(String.format("Size mismatch: expected %d bytes, got %d bytes", expectedSize, downloaded));
                         }
                     }
+                    String actual = digest == null ? null : Hex.encodeHexString(digest.digest());
+                    if (actual != null && !actual.equalsIgnoreCase(sha1)) {
+                        Files.deleteIfExists(temp);
+                        throw new IOException(String.format("SHA-1 mismatch for %s: expected %s, got %s", urlStr, sha1, actual));
+                    }
                     
                     Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING);
+                    if (actual != null) {
+                        VerificationLedger.record(dest, VerificationLedger.SHA1, actual);
+                    }
                     return;
                     
                 } finally {
@@ -261,6 +287,9 @@ public final class GlobalDownloader {
                 }
             } catch (IOException e) {
                 lastException = e;
+                if (DownloadThrottle.isCancelled()) {
+                    break;
+                }
                 if (attempt < maxRetries) {
                     long backoff = (long) (1000L * Math.pow(2, attempt));
                     try {
@@ -327,10 +356,12 @@ public final class GlobalDownloader {
     private static class DownloadTask {
         final String source;
         final File destination;
+        final String sha1;
         
-        DownloadTask(String source, File destination) {
+        DownloadTask(String source, File destination, String sha1) {
             this.source = source;
             this.destination = destination;
+            this.sha1 = sha1;
         }
     }
 }
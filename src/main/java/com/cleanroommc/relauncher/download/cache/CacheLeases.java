@@ -0,0 +1,224 @@
+package com.cleanroommc.relauncher.download.cache;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * What the games of running instances are using from the cache, which several instances may share. Before it starts
+ * its game, an instance lists the release, libraries, natives and Java it runs from in {@code leases/<id>.json} and
+ * locks {@code leases/<id>.lock} until the game has exited. The operating system drops the lock when a process dies,
+ * so a lease whose lock can be taken is left over and gets removed.
+ * <p>
+ * Whatever deletes or replaces cache entries in place checks {@link #isHeld} first, inside {@link #exclusively},
+ * which no instance can take a lease during.
+ */
+public final class CacheLeases {
+
+    private static final Path DIRECTORY = CleanroomRelauncher.CACHE_DIR.toAbsolutePath().normalize().resolve("leases");
+    private static final Path GUARD_FILE = DIRECTORY.resolve(".lock");
+    private static final String LEASE_SUFFIX = ".json";
+    private static final String LOCK_SUFFIX = ".lock";
+
+    // File locks belong to the whole JVM, so this process's own leases are known here rather than by their locks
+    private static final List<Lease> OWN = new ArrayList<>();
+    private static int exclusiveDepth;
+
+    private CacheLeases() { }
+
+    public interface Action<T> {
+
+        T run() throws IOException;
+
+    }
+
+    /**
+     * Records {@code paths} as used by this instance's game until the returned lease is closed.
+     */
+    public static Lease take(Collection<Path> paths) throws IOException {
+        return exclusively(() -> {
+            Files.createDirectories(DIRECTORY);
+            String id = UUID.randomUUID().toString();
+            Path lockFile = DIRECTORY.resolve(id + LOCK_SUFFIX);
+            FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            Lease lease;
+            try {
+                // Locked before the list exists, so nobody finds the list with its lock free
+                lease = new Lease(id, channel, channel.lock(), normalize(paths));
+                Path temp = DIRECTORY.resolve(id + LEASE_SUFFIX + ".tmp");
+                try (Writer writer = Files.newBufferedWriter(temp)) {
+                    List<String> names = new ArrayList<>();
+                    lease.paths.forEach(path -> names.add(path.toString()));
+                    CleanroomRelauncher.GSON.toJson(names, writer);
+                }
+                Files.move(temp, DIRECTORY.resolve(id + LEASE_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                Files.deleteIfExists(lockFile);
+                throw e;
+            }
+            OWN.add(lease);
+            return lease;
+        });
+    }
+
+    /**
+     * @return every path the games of live instances use, this one's included
+     */
+    public static synchronized Set<Path> held() {
+        Set<Path> held = new HashSet<>();
+        Set<String> own = new HashSet<>();
+        for (Lease lease : OWN) {
+            held.addAll(lease.paths);
+            own.add(lease.id);
+        }
+        if (!Files.isDirectory(DIRECTORY)) {
+            return held;
+        }
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(DIRECTORY, "*" + LEASE_SUFFIX)) {
+            for (Path file : leases) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - LEASE_SUFFIX.length());
+                if (own.contains(id)) continue;
+                if (!isLive(id)) {
+                    removeLeftover(id);
+                    continue;
+                }
+                try (Reader reader = Files.newBufferedReader(file)) {
+                    List<String> paths = CleanroomRelauncher.GSON.fromJson(reader, new TypeToken<List<String>>() { }.getType());
+                    if (paths != null) {
+                        paths.forEach(path -> held.add(Paths.get(path)));
+                    }
+                } catch (NoSuchFileException e) {
+                    // Its game exited just now
+                } catch (IOException | RuntimeException e) {
+                    CleanroomRelauncher.LOGGER.warn("Unable to read cache lease {}: {}", name, e.toString());
+                }
+            }
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to list cache leases: {}", e.toString());
+        }
+        return held;
+    }
+
+    /**
+     * @return whether a live instance's game uses {@code path}, something inside it or something containing it
+     */
+    public static boolean isHeld(Path path) {
+        Path absolute = path.toAbsolutePath().normalize();
+        for (Path held : held()) {
+            if (held.startsWith(absolute) || absolute.startsWith(held)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs {@code action} while no instance can take a lease, so what {@link #isHeld} said inside stays true.
+     * Blocks while another instance is inside; keep the action short.
+     */
+    public static synchronized <T> T exclusively(Action<T> action) throws IOException {
+        if (exclusiveDepth > 0) {
+            return action.run();
+        }
+        Files.createDirectories(DIRECTORY);
+        try (FileChannel channel = FileChannel.open(GUARD_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            exclusiveDepth++;
+            try {
+                return action.run();
+            } finally {
+                exclusiveDepth--;
+            }
+        }
+    }
+
+    private static boolean isLive(String id) {
+        Path lockFile = DIRECTORY.resolve(id + LOCK_SUFFIX);
+        if (!Files.exists(lockFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            // Gone meanwhile, or locked so firmly it cannot even be opened
+            return Files.exists(lockFile);
+        }
+    }
+
+    private static void removeLeftover(String id) {
+        try {
+            Files.deleteIfExists(DIRECTORY.resolve(id + LEASE_SUFFIX));
+            Files.deleteIfExists(DIRECTORY.resolve(id + LOCK_SUFFIX));
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.debug("Unable to remove left over cache lease {}: {}", id, e.toString());
+        }
+    }
+
+    private static List<Path> normalize(Collection<Path> paths) {
+        List<Path> normalized = new ArrayList<>();
+        for (Path path : paths) {
+            normalized.add(path.toAbsolutePath().normalize());
+        }
+        return normalized;
+    }
+
+    public static final class Lease implements Closeable {
+
+        private final String id;
+        private final FileChannel channel;
+        private final FileLock lock;
+        private final List<Path> paths;
+
+        private Lease(String id, FileChannel channel, FileLock lock, List<Path> paths) {
+            this.id = id;
+            this.channel = channel;
+            this.lock = lock;
+            this.paths = paths;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (CacheLeases.class) {
+                if (!OWN.remove(this)) {
+                    return;
+                }
+                // The list goes first: whoever finds it afterwards still sees the lock held
+                Files.deleteIfExists(DIRECTORY.resolve(this.id + LEASE_SUFFIX));
+                this.lock.release();
+                this.channel.close();
+                Files.deleteIfExists(DIRECTORY.resolve(this.id + LOCK_SUFFIX));
+            }
+        }
+
+    }
+
+}
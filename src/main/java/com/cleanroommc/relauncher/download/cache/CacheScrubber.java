@@ -0,0 +1,368 @@
+package com.cleanroommc.relauncher.download.cache;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The second tier of cache verification. The launch path only compares sizes and the {@link VerificationLedger};
+ * this hashes the cached libraries, extracted natives and Java installs in full, in the background while the game
+ * runs, at a limited disk rate. Files that fail are not touched while the game may be using them: they are listed
+ * for quarantine, and the next launch moves them aside before anything looks at the cache, so only those get
+ * downloaded or extracted again.
+ * <p>
+ * Files the ledger already vouches for in their current state are skipped, except for a full pass once every
+ * {@link #FULL_SCRUB_INTERVAL_MILLIS}, which is what catches rot that leaves size and time stamp alone.
+ */
+public final class CacheScrubber {
+
+    private static final Path CACHE_DIR = CleanroomRelauncher.CACHE_DIR.toAbsolutePath().normalize();
+    private static final Path QUARANTINE_DIR = CACHE_DIR.resolve("quarantine");
+    private static final Path PENDING_FILE = QUARANTINE_DIR.resolve("pending.txt");
+    // Touched after every complete full pass
+    private static final Path FULL_SCRUB_MARKER = CACHE_DIR.resolve(".scrubbed");
+    private static final long FULL_SCRUB_INTERVAL_MILLIS = Duration.ofDays(7).toMillis();
+    private static final long BYTES_PER_SECOND = 32L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Object PACE_LOCK = new Object();
+    private static long nextFreeAt;
+
+    private CacheScrubber() { }
+
+    /**
+     * A file and what it is expected to hash to.
+     */
+    public static final class Expected {
+
+        final Path file;
+        final String sha1;
+        final long size;
+        final long crc;
+        final Path quarantine;
+
+        private Expected(Path file, String sha1, long size, long crc, Path quarantine) {
+            this.file = file;
+            this.sha1 = sha1;
+            this.size = size;
+            this.crc = crc;
+            this.quarantine = quarantine;
+        }
+
+        /**
+         * @param sha1 the expected SHA-1; null to check the CRC-32s inside the jar instead
+         */
+        public static Expected sha1(Path file, String sha1) {
+            return new Expected(file, sha1, -1L, -1L, file);
+        }
+
+        /**
+         * @param quarantine what to move aside if the file is damaged: the file itself, or, when single files cannot
+         *                   be fetched again, a file whose absence makes the whole thing be fetched again
+         */
+        public static Expected crc(Path file, long size, long crc, Path quarantine) {
+            return new Expected(file, null, size, crc, quarantine);
+        }
+
+    }
+
+    /**
+     * Verifies {@code expected}, recording results in the ledger and listing damaged files for quarantine. Interrupting
+     * the calling thread stops all workers; what was verified until then is kept.
+     */
+    public static void scrub(List<Expected> expected) throws IOException {
+        boolean full = !Files.exists(FULL_SCRUB_MARKER)
+                || System.currentTimeMillis() - Files.getLastModifiedTime(FULL_SCRUB_MARKER).toMillis() > FULL_SCRUB_INTERVAL_MILLIS;
+        List<Expected> pending = new ArrayList<>();
+        for (Expected item : expected) {
+            if (Files.isRegularFile(item.file) && (full || !isVouchedFor(item))) {
+                pending.add(item);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        Set<Path> damaged = new LinkedHashSet<>();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        ForkJoinPool pool = new ForkJoinPool(parallelism, CacheScrubber::newWorker, null, false);
+        try {
+            pool.submit(new ScrubAction(pending, 0, pending.size(), damaged, stop)).get();
+        } catch (InterruptedException e) {
+            stop.set(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Cache scrub interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Cache scrub failed", cause);
+        } finally {
+            pool.shutdownNow();
+            VerificationLedger.save();
+            listForQuarantine(damaged);
+        }
+
+        if (full) {
+            Files.createDirectories(FULL_SCRUB_MARKER.getParent());
+            if (!Files.exists(FULL_SCRUB_MARKER)) {
+                Files.createFile(FULL_SCRUB_MARKER);
+            }
+            Files.setLastModifiedTime(FULL_SCRUB_MARKER, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        CleanroomRelauncher.LOGGER.info("Scrubbed {} cached files in {} ms, {} damaged", pending.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), damaged.size());
+    }
+
+    /**
+     * Moves files listed by an earlier scrub into the quarantine directory. Must run before the cache is used.
+     */
+    public static void quarantinePending() {
+        if (!Files.isRegularFile(PENDING_FILE)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(PENDING_FILE, StandardCharsets.UTF_8)) {
+                if (line.trim().isEmpty()) continue;
+                Path path = CACHE_DIR.resolve(line.trim()).normalize();
+                if (!path.startsWith(CACHE_DIR) || path.startsWith(QUARANTINE_DIR) || !Files.exists(path)) continue;
+                Path target = QUARANTINE_DIR.resolve(CACHE_DIR.relativize(path));
+                try {
+                    deleteTree(target);
+                    Files.createDirectories(target.getParent());
+                    Files.move(path, target);
+                    VerificationLedger.forget(path);
+                    CleanroomRelauncher.LOGGER.warn("Quarantined damaged {} into {}, it will be fetched again", path, target);
+                } catch (IOException e) {
+                    CleanroomRelauncher.LOGGER.warn("Unable to quarantine {}: {}", path, e.toString());
+                }
+            }
+            Files.delete(PENDING_FILE);
+            VerificationLedger.save();
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to read {}: {}", PENDING_FILE, e.toString());
+        }
+    }
+
+    private static boolean isVouchedFor(Expected item) {
+        if (item.sha1 != null) {
+            return item.sha1.equalsIgnoreCase(VerificationLedger.lookup(item.file, VerificationLedger.SHA1));
+        }
+        if (item.crc < 0) {
+            return VerificationLedger.lookup(item.file, VerificationLedger.ARCHIVE) != null;
+        }
+        return Long.toHexString(item.crc).equals(VerificationLedger.lookup(item.file, VerificationLedger.CRC32));
+    }
+
+    private static boolean verify(Expected item, AtomicBoolean stop) throws IOException {
+        if (item.sha1 == null && item.crc < 0) {
+            if (verifyJar(item.file, stop)) {
+                VerificationLedger.record(item.file, VerificationLedger.ARCHIVE, CacheVerification.VERIFIED);
+                return true;
+            }
+            VerificationLedger.forget(item.file);
+            return false;
+        }
+        MessageDigest digest = item.sha1 == null ? null : DigestUtils.getSha1Digest();
+        CRC32 crc = new CRC32();
+        long read = 0L;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(item.file)) {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                if (stop.get()) {
+                    throw new InterruptedIOException("Cache scrub stopped");
+                }
+                if (digest != null) {
+                    digest.update(buffer, 0, n);
+                } else {
+                    crc.update(buffer, 0, n);
+                }
+                read += n;
+                pace(n);
+            }
+        }
+        if (digest != null) {
+            String actual = Hex.encodeHexString(digest.digest());
+            VerificationLedger.record(item.file, VerificationLedger.SHA1, actual);
+            return actual.equalsIgnoreCase(item.sha1);
+        }
+        if (read != item.size || crc.getValue() != item.crc) {
+            return false;
+        }
+        VerificationLedger.record(item.file, VerificationLedger.CRC32, Long.toHexString(item.crc));
+        return true;
+    }
+
+    /**
+     * Checks the CRC-32 of every entry of {@code jar} on this thread, paced like any other read.
+     */
+    private static boolean verifyJar(Path jar, AtomicBoolean stop) throws IOException {
+        ZipFile zip;
+        try {
+            zip = new ZipFile(jar.toFile());
+        } catch (IOException e) {
+            return false; // Damaged central directory
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                crc.reset();
+                long read = 0L;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    int n;
+                    while ((n = in.read(buffer)) >= 0) {
+                        if (stop.get()) {
+                            throw new InterruptedIOException("Cache scrub stopped");
+                        }
+                        crc.update(buffer, 0, n);
+                        read += n;
+                        pace(n);
+                    }
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    return false; // Damaged compressed data
+                }
+                if (entry.getSize() >= 0 && read != entry.getSize() || entry.getCrc() >= 0 && crc.getValue() != entry.getCrc()) {
+                    return false;
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return true;
+    }
+
+    private static void pace(int bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (PACE_LOCK) {
+            long now = System.nanoTime();
+            nextFreeAt = Math.max(nextFreeAt, now) + bytes * 1_000_000_000L / BYTES_PER_SECOND;
+            waitNanos = nextFreeAt - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Cache scrub interrupted");
+            }
+        }
+    }
+
+    private static synchronized void listForQuarantine(Set<Path> damaged) {
+        if (damaged.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Path path : damaged) {
+            lines.append(CACHE_DIR.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/')).append('\n');
+            CleanroomRelauncher.LOGGER.warn("{} is damaged and will be quarantined on the next launch", path);
+        }
+        try {
+            Files.createDirectories(QUARANTINE_DIR);
+            Files.write(PENDING_FILE, lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to write {}: {}", PENDING_FILE, e.toString());
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        if (Files.isDirectory(root)) {
+            List<Path> children = new ArrayList<>();
+            try (Stream<Path> list = Files.list(root)) {
+                list.forEach(children::add);
+            }
+            for (Path child : children) {
+                deleteTree(child);
+            }
+        }
+        Files.delete(root);
+    }
+
+    private static ForkJoinWorkerThread newWorker(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Relauncher Scrub-" + thread.getPoolIndex());
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }
+
+    private static final class ScrubAction extends RecursiveAction {
+
+        private final List<Expected> items;
+        private final int from;
+        private final int to;
+        private final Set<Path> damaged;
+        private final AtomicBoolean stop;
+
+        ScrubAction(List<Expected> items, int from, int to, Set<Path> damaged, AtomicBoolean stop) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.damaged = damaged;
+            this.stop = stop;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new ScrubAction(this.items, this.from, middle, this.damaged, this.stop),
+                        new ScrubAction(this.items, middle, this.to, this.damaged, this.stop));
+                return;
+            }
+            Expected item = this.items.get(this.from);
+            if (this.stop.get()) {
+                return;
+            }
+            try {
+                if (!verify(item, this.stop)) {
+                    synchronized (this.damaged) {
+                        this.damaged.add(item.quarantine);
+                    }
+                }
+            } catch (InterruptedIOException e) {
+                this.stop.set(true);
+            } catch (IOException e) {
+                CleanroomRelauncher.LOGGER.debug("Unable to scrub {}: {}", item.file, e.toString());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,341 @@
+package com.cleanroommc.relauncher.download.cache;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Tracks when each release, Java install, library and natives set in the cache was last part of a launch,
+ * and evicts the least recently used ones once the cache grows past a size cap. Anything without a record is
+ * judged by its time stamp.
+ * <p>
+ * Several instances may share the cache, so nothing the game of a live instance runs from is evicted, however
+ * long ago it started: each entry is checked against the {@link CacheLeases} right before it is deleted.
+ */
+public final class CacheUsage {
+
+    private static final Path CACHE_DIR = CleanroomRelauncher.CACHE_DIR.toAbsolutePath().normalize();
+    private static final Path FILE = CACHE_DIR.resolve("usage.json");
+    private static final Path QUARANTINE_DIR = CACHE_DIR.resolve("quarantine");
+    // The cache size found by the last walk, as of the file's time stamp
+    private static final Path SIZE_FILE = CACHE_DIR.resolve(".size");
+    private static final long MEASURE_INTERVAL_MILLIS = Duration.ofDays(1).toMillis();
+    // Files only a release directory contains
+    private static final String[] RELEASE_MARKERS = { "universal.jar", "installer.jar", "mmc.zip" };
+
+    private CacheUsage() { }
+
+    /**
+     * Records {@code paths} (files or directories in the cache) as used by the launch happening now.
+     */
+    public static synchronized void markUsed(Collection<Path> paths) {
+        Map<String, Long> usage = load();
+        usage.keySet().removeIf(key -> !Files.exists(CACHE_DIR.resolve(key)));
+        long now = System.currentTimeMillis();
+        for (Path path : paths) {
+            String key = keyOf(path);
+            if (key != null) {
+                usage.put(key, now);
+            }
+        }
+        save(usage);
+    }
+
+    /**
+     * Deletes the least recently used releases, Java installs, libraries and natives until the cache is no larger
+     * than {@code capBytes}, sparing everything in or around {@code protectedPaths} and everything a live instance
+     * holds a lease on. Stops early if the calling thread is interrupted.
+     * <p>
+     * Measuring the cache means a stat of every file in it, so a measurement well under the cap is trusted for
+     * {@link #MEASURE_INTERVAL_MILLIS}.
+     */
+    public static synchronized void collect(long capBytes, Collection<Path> protectedPaths) throws IOException {
+        long now = System.currentTimeMillis();
+        long total = measure(capBytes, now);
+        if (total <= capBytes) {
+            return;
+        }
+        List<Path> keep = new ArrayList<>();
+        for (Path path : protectedPaths) {
+            keep.add(path.toAbsolutePath().normalize());
+        }
+        keep.addAll(CacheLeases.held());
+        Map<String, Long> usage = load();
+        List<Candidate> candidates = new ArrayList<>();
+        for (Path path : candidates()) {
+            if (keep.stream().noneMatch(p -> p.startsWith(path) || path.startsWith(p))) {
+                // Quarantined files go first
+                Long lastUsed = path.startsWith(QUARANTINE_DIR) ? Long.valueOf(0L) : usage.get(keyOf(path));
+                candidates.add(new Candidate(path, lastUsed != null ? lastUsed : lastModified(path)));
+            }
+        }
+        candidates.sort(Comparator.comparingLong(candidate -> candidate.lastUsed));
+
+        long before = total;
+        int evicted = 0;
+        List<String> evictedKeys = new ArrayList<>();
+        try {
+            for (Candidate candidate : candidates) {
+                if (total <= capBytes) {
+                    break;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Cache collection interrupted");
+                }
+                long size = sizeOf(candidate.path);
+                try {
+                    // An instance may have started from it since the leases were read
+                    boolean deleted = CacheLeases.exclusively(() -> {
+                        if (CacheLeases.isHeld(candidate.path)) {
+                            return false;
+                        }
+                        deleteTree(candidate.path);
+                        return true;
+                    });
+                    if (!deleted) continue;
+                } catch (IOException e) {
+                    CleanroomRelauncher.LOGGER.debug("Unable to evict {}: {}", candidate.path, e.toString());
+                    continue;
+                }
+                VerificationLedger.forget(candidate.path);
+                pruneEmptyParents(candidate.path.getParent());
+                evictedKeys.add(keyOf(candidate.path));
+                total -= size;
+                evicted++;
+            }
+            if (evicted > 0) {
+                // Natives only the evicted sets linked to
+                total -= NativesStore.pruneObjects(CACHE_DIR.resolve("natives"));
+            }
+        } finally {
+            // Read again, as another instance may have recorded its launch in the meantime
+            Map<String, Long> latest = load();
+            latest.keySet().removeAll(evictedKeys);
+            save(latest);
+            VerificationLedger.save();
+            recordSize(total);
+            if (evicted > 0) {
+                CleanroomRelauncher.LOGGER.info("Evicted {} least recently used cache entries, {} MB -> {} MB", evicted,
+                        before / (1024 * 1024), total / (1024 * 1024));
+            }
+        }
+        if (total > capBytes) {
+            CleanroomRelauncher.LOGGER.info("Cache is {} MB, over its {} MB cap, but the rest is in use", total / (1024 * 1024), capBytes / (1024 * 1024));
+        }
+    }
+
+    private static List<Path> candidates() throws IOException {
+        List<Path> candidates = new ArrayList<>();
+        try (DirectoryStream<Path> top = Files.newDirectoryStream(CACHE_DIR, Files::isDirectory)) {
+            for (Path dir : top) {
+                for (String marker : RELEASE_MARKERS) {
+                    if (Files.exists(dir.resolve(marker))) {
+                        candidates.add(dir);
+                        break;
+                    }
+                }
+            }
+        }
+        Path java = CACHE_DIR.resolve("java");
+        if (Files.isDirectory(java)) {
+            try (DirectoryStream<Path> installs = Files.newDirectoryStream(java, Files::isDirectory)) {
+                for (Path install : installs) {
+                    // Pending updates, staging directories and replaced installs are not installs of their own
+                    String name = install.getFileName().toString();
+                    if (!name.endsWith(".update") && !name.endsWith(".staging") && !name.endsWith(".old")
+                            && Files.isRegularFile(install.resolve("receipt.json"))) {
+                        candidates.add(install);
+                    }
+                }
+            }
+        }
+        Path libraries = CACHE_DIR.resolve("libraries");
+        if (Files.isDirectory(libraries)) {
+            try (Stream<Path> walk = Files.walk(libraries)) {
+                walk.filter(path -> path.getFileName().toString().endsWith(".jar") && Files.isRegularFile(path)).forEach(candidates::add);
+            }
+        }
+        Path natives = CACHE_DIR.resolve("natives");
+        if (Files.isDirectory(natives)) {
+            try (Stream<Path> walk = Files.walk(natives)) {
+                walk.filter(path -> NativesStore.isSet(path) || isNativesDirectory(path)).forEach(candidates::add);
+            }
+        }
+        if (Files.isDirectory(QUARANTINE_DIR)) {
+            try (Stream<Path> list = Files.list(QUARANTINE_DIR)) {
+                list.forEach(candidates::add);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return whether {@code dir} is where a natives jar was extracted before the {@link NativesStore}:
+     * {@code <artifact>/<version>/<artifact>-<version>-<classifier>}
+     */
+    private static boolean isNativesDirectory(Path dir) {
+        Path version = dir.getParent();
+        Path artifact = version == null ? null : version.getParent();
+        return artifact != null && Files.isDirectory(dir)
+                && dir.getFileName().toString().startsWith(artifact.getFileName() + "-" + version.getFileName() + "-");
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * @return the size of the cache: the last measurement if it is recent and well under {@code capBytes},
+     * otherwise a new one
+     */
+    private static long measure(long capBytes, long now) throws IOException {
+        try {
+            if (now - Files.getLastModifiedTime(SIZE_FILE).toMillis() < MEASURE_INTERVAL_MILLIS) {
+                long measured = Long.parseLong(new String(Files.readAllBytes(SIZE_FILE), StandardCharsets.UTF_8).trim());
+                if (measured < capBytes / 10 * 9) {
+                    return measured;
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // Measure again
+        }
+        long total = sizeOf(CACHE_DIR);
+        recordSize(total);
+        return total;
+    }
+
+    private static void recordSize(long total) {
+        try {
+            Path temp = SIZE_FILE.resolveSibling(SIZE_FILE.getFileName() + ".tmp");
+            Files.write(temp, Long.toString(total).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, SIZE_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.debug("Unable to save {}: {}", SIZE_FILE.getFileName(), e.toString());
+        }
+    }
+
+    private static long sizeOf(Path root) throws IOException {
+        if (Files.isRegularFile(root)) {
+            return Files.size(root);
+        }
+        AtomicLong size = new AtomicLong();
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.forEach(path -> {
+                try {
+                    if (Files.isRegularFile(path)) {
+                        size.addAndGet(Files.size(path));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return size.get();
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    path.toFile().setWritable(true);
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void pruneEmptyParents(Path dir) {
+        Path libraries = CACHE_DIR.resolve("libraries");
+        Path natives = CACHE_DIR.resolve("natives");
+        while (dir != null && !dir.equals(libraries) && !dir.equals(natives) && (dir.startsWith(libraries) || dir.startsWith(natives))) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                if (stream.iterator().hasNext()) {
+                    return;
+                }
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                Files.delete(dir);
+            } catch (IOException e) {
+                return;
+            }
+            dir = dir.getParent();
+        }
+    }
+
+    private static String keyOf(Path path) {
+        Path absolute = path.toAbsolutePath().normalize();
+        return absolute.startsWith(CACHE_DIR) ? CACHE_DIR.relativize(absolute).toString().replace('\\', '/') : null;
+    }
+
+    private static Map<String, Long> load() {
+        if (Files.exists(FILE)) {
+            try (Reader reader = Files.newBufferedReader(FILE)) {
+                Map<String, Long> usage = CleanroomRelauncher.GSON.fromJson(reader, new TypeToken<HashMap<String, Long>>() { }.getType());
+                if (usage != null) {
+                    return usage;
+                }
+            } catch (IOException | RuntimeException e) {
+                CleanroomRelauncher.LOGGER.warn("Unable to read {}, judging cache entries by time stamp: {}", FILE.getFileName(), e.toString());
+            }
+        }
+        return new HashMap<>();
+    }
+
+    private static void save(Map<String, Long> usage) {
+        try {
+            Files.createDirectories(FILE.getParent());
+            Path temp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                CleanroomRelauncher.GSON.toJson(usage, writer);
+            }
+            Files.move(temp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to save {}: {}", FILE.getFileName(), e.toString());
+        }
+    }
+
+    private static final class Candidate {
+
+        final Path path;
+        final long lastUsed;
+
+        Candidate(Path path, long lastUsed) {
+            this.path = path;
+            this.lastUsed = lastUsed;
+        }
+
+    }
+
+}
@@ -1,76 +1,147 @@
 package com.cleanroommc.relauncher.download.cache;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-
 public final class CacheVerification {
 
+    static final String VERIFIED = "ok";
+    private static final int MAX_VERIFY_THREADS = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Below this much compressed data a thread pool costs more than it saves
+    private static final long PARALLEL_THRESHOLD_BYTES = 4L * 1024 * 1024;
+
     private CacheVerification() {}
 
-    public static boolean verifyJavaArchive(Path archive) {
-        if (archive == null || !Files.isRegularFile(archive)) return false;
-        String name = archive.getFileName().toString().toLowerCase();
+    /**
+     * Checks the CRC-32 of every entry of a jar, unless the ledger already has a result for it in its current
+     * state; callers {@link VerificationLedger#save() save} the ledger afterwards.
+     */
+    public static boolean verifyJar(Path jar) {
+        if (!Files.isRegularFile(jar)) return false;
+        String known = VerificationLedger.lookup(jar, VerificationLedger.ARCHIVE);
+        if (known != null) return VERIFIED.equals(known);
+        boolean verified;
         try {
-            if (name.endsWith(".zip")) {
-                return verifyZip(archive);
-            } else if (name.endsWith(".tar.gz")) {
-                return verifyTarGz(archive);
-            } else {
-                return true; // unknown type; assume okay
-            }
+            verified = verifyZip(jar);
+        } catch (IOException e) {
+            verified = false;
+        }
+        if (verified) {
+            VerificationLedger.record(jar, VerificationLedger.ARCHIVE, VERIFIED);
+        }
+        return verified;
+    }
+
+    /**
+     * The launch-path check of a cached library: it must exist, match the SHA-1 if the ledger knows the hash of its
+     * current state, and otherwise have the listed size. Full hashing is left to the {@link CacheScrubber}.
+     *
+     * @param sha1 the SHA-1 the version json lists, or null
+     * @param size the size the version json lists, or 0 if unknown
+     */
+    public static boolean isLibraryIntact(Path jar, String sha1, long size) {
+        if (!Files.isRegularFile(jar)) return false;
+        String known = sha1 == null ? null : VerificationLedger.lookup(jar, VerificationLedger.SHA1);
+        if (known != null) return known.equalsIgnoreCase(sha1);
+        try {
+            return size <= 0 || Files.size(jar) == size;
         } catch (IOException e) {
             return false;
         }
     }
 
-    private static boolean verifyZip(Path zipPath) throws IOException {
+    /**
+     * Checks every entry of a zip or jar against the CRC-32 and size in its central directory. Large archives are
+     * split across cores, largest entries first; the first mismatch stops all workers.
+     *
+     * @return false if an entry does not match or cannot be read
+     */
+    public static boolean verifyZip(Path zipPath) throws IOException {
         try (ZipFile zf = new ZipFile(zipPath.toFile())) {
-            Enumeration<? extends ZipEntry> entries = zf.entries();
-            byte[] buf = new byte[8192];
-            while (entries.hasMoreElements()) {
-                ZipEntry ze = entries.nextElement();
+            List<ZipEntry> entries = new ArrayList<>();
+            long totalSize = 0L;
+            Enumeration<? extends ZipEntry> enumeration = zf.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry ze = enumeration.nextElement();
                 if (ze.isDirectory()) continue;
-                try (InputStream in = new BufferedInputStream(zf.getInputStream(ze))) {
-                    int n;
-                    long read = 0;
-                    while ((n = in.read(buf)) >= 0) {
-                        read += n;
+                entries.add(ze);
+                totalSize += Math.max(0L, ze.getCompressedSize());
+            }
+            int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+            int threads = Math.min(Math.min(MAX_VERIFY_THREADS, cores), entries.size());
+            if (threads <= 1 || totalSize < PARALLEL_THRESHOLD_BYTES) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                CRC32 crc = new CRC32();
+                for (ZipEntry ze : entries) {
+                    if (!verifyZipEntry(zf, ze, buf, crc)) return false;
+                }
+                return true;
+            }
+
+            entries.sort((a, b) -> Long.compare(b.getCompressedSize(), a.getCompressedSize()));
+            AtomicInteger nextEntry = new AtomicInteger(0);
+            AtomicBoolean failed = new AtomicBoolean(false);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    CRC32 crc = new CRC32();
+                    int index;
+                    while (!failed.get() && (index = nextEntry.getAndIncrement()) < entries.size()) {
+                        if (!verifyZipEntry(zf, entries.get(index), buf, crc)) {
+                            failed.set(true);
+                        }
                     }
-                    if (read < 0) return false;
+                    return null;
+                }));
+            }
+            pool.shutdown();
+            try {
+                for (Future<Void> future : futures) {
+                    future.get();
                 }
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while verifying " + zipPath.getFileName(), e);
+            } catch (ExecutionException e) {
+                pool.shutdownNow();
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                throw new IOException("Unable to verify " + zipPath.getFileName(), cause);
             }
+            return !failed.get();
         }
-        return true;
     }
 
-    private static boolean verifyTarGz(Path tarGzPath) throws IOException {
-        try (InputStream fis = Files.newInputStream(tarGzPath);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             GzipCompressorInputStream gis = new GzipCompressorInputStream(bis);
-             TarArchiveInputStream tis = new TarArchiveInputStream(gis)) {
-            TarArchiveEntry entry;
-            byte[] buf = new byte[8192];
-            while ((entry = tis.getNextTarEntry()) != null) {
-                if (entry.isDirectory()) continue;
-                long toRead = entry.getSize();
-                if (toRead < 0) toRead = Long.MAX_VALUE; // stream until EOF for unknown sizes
-                while (toRead > 0) {
-                    int n = tis.read(buf, 0, (int) Math.min(buf.length, Math.max(1, Math.min(toRead, (long) buf.length))));
-                    if (n < 0) break;
-                    toRead -= n;
-                }
+    private static boolean verifyZipEntry(ZipFile zf, ZipEntry ze, byte[] buf, CRC32 crc) {
+        crc.reset();
+        long read = 0L;
+        try (InputStream in = zf.getInputStream(ze)) {
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                crc.update(buf, 0, n);
+                read += n;
             }
+        } catch (IOException e) {
+            return false; // Damaged compressed data
         }
-        return true;
+        return (ze.getSize() < 0 || read == ze.getSize()) && (ze.getCrc() < 0 || crc.getValue() == ze.getCrc());
     }
 }
@@ -11,7 +11,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CleanroomCache {
 
@@ -68,17 +70,8 @@ public class CleanroomCache {
             }
         }
 
-        List<Version> versions = new ArrayList<>();
-
-        Version forgeJsonVersion = Version.parse(forgeJson);
-        forgeJsonVersion.libraryPaths.add(this.getUniversalJar().toAbsolutePath().toString());
-
-        Version minecraftJsonVersion = Version.parse(minecraftJson);
-        Version lwjglJsonVersion = Version.parse(lwjglJson);
-
-        versions.add(forgeJsonVersion);
-        versions.add(minecraftJsonVersion);
-        versions.add(lwjglJsonVersion);
+        List<Version> versions = this.versions();
+        versions.get(0).libraryPaths.add(this.getUniversalJar().toAbsolutePath().toString());
 
         for (Version version : versions) {
             version.downloadLibraries(librariesDirectory);
@@ -86,14 +79,33 @@ public class CleanroomCache {
 
         GlobalDownloader.INSTANCE.blockUntilFinished();
 
+        Map<String, Map<String, String>> nativeFiles = new LinkedHashMap<>();
         for (Version version : versions) {
             version.extractNatives(librariesDirectory, nativesDirectory);
+            nativeFiles.putAll(version.nativeFiles);
         }
+        versions.get(0).nativesPaths.add(NativesStore.assemble(nativesDirectory, nativeFiles).toAbsolutePath().toString());
 
         // return version;
         return versions;
     }
 
+    /**
+     * @return the release's Forge, Minecraft and LWJGL versions as parsed from the cache, without downloading or
+     * checking anything
+     */
+    public List<Version> versions() throws IOException {
+        List<Version> versions = new ArrayList<>();
+        versions.add(Version.parse(this.getForgeJson()));
+        versions.add(Version.parse(this.getMinecraftJson()));
+        versions.add(Version.parse(this.getLwjglVersionJson()));
+        return versions;
+    }
+
+    public Path getDirectory() {
+        return this.directory;
+    }
+
     public Path getInstallerJar() {
         return this.directory.resolve("installer.jar");
     }
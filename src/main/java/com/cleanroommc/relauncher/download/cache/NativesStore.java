@@ -0,0 +1,321 @@
+package com.cleanroommc.relauncher.download.cache;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Natives stored once by content. Every file extracted from a natives jar goes to {@code objects/<sha1>}, whichever
+ * jars and releases ship it; a record per jar under {@code jars/} lists what it extracted to. A launch gets a single
+ * directory under {@code sets/} holding hardlinks to the objects under their names in the jars, so the library path
+ * is one short entry. Sets are named after their content and reused by every launch with the same natives.
+ */
+public final class NativesStore {
+
+    private static final String OBJECTS = "objects";
+    private static final String JARS = "jars";
+    private static final String SETS = "sets";
+    // Inside a set: the names and SHA-1s of its files
+    private static final String SET_FILE = ".set.json";
+    // Unreferenced objects younger than this may belong to a set being assembled by another launch
+    private static final long ORPHAN_GRACE_MILLIS = Duration.ofDays(1).toMillis();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private NativesStore() { }
+
+    /**
+     * Extracts the files of a natives jar into the store, unless the record of its last extraction still matches:
+     * the jar's SHA-1, size and time stamp, and every object present with its size.
+     *
+     * @param jarRelative the jar's path below the libraries directory, which names its record
+     * @param sha1        the jar's SHA-1 the version json lists, or null
+     * @return the jar's files, name to SHA-1, in the order of the jar
+     */
+    public static Map<String, String> extract(Path nativesDirectory, Path jarPath, String jarRelative, String sha1) throws IOException {
+        Path recordFile = recordOf(nativesDirectory, jarRelative);
+        JarRecord record = readRecord(recordFile);
+        BasicFileAttributes jar = Files.readAttributes(jarPath, BasicFileAttributes.class);
+        if (record != null && (sha1 == null || sha1.equalsIgnoreCase(record.sha1)) && record.jarSize == jar.size()
+                && record.jarModified == jar.lastModifiedTime().toMillis() && hasObjects(nativesDirectory, record)) {
+            return toNames(record);
+        }
+
+        record = new JarRecord();
+        record.sha1 = sha1;
+        record.jarSize = jar.size();
+        record.jarModified = jar.lastModifiedTime().toMillis();
+        record.files = new LinkedHashMap<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipFile zipFile = new ZipFile(jarPath.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || entry.getName().startsWith("META-INF/")) continue;
+                String name = entry.getName().replace('\\', '/');
+                if (name.startsWith("/") || name.contains("../")) {
+                    throw new IOException("Entry " + entry.getName() + " of " + jarPath + " is outside of the natives directory");
+                }
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    record.files.put(name, store(nativesDirectory, in, buffer));
+                }
+            }
+        }
+        Files.createDirectories(recordFile.getParent());
+        Path temp = recordFile.resolveSibling(recordFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            CleanroomRelauncher.GSON.toJson(record, writer);
+        }
+        Files.move(temp, recordFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return toNames(record);
+    }
+
+    /**
+     * Links the files of {@code jars} into one directory. Where two jars ship different files under the same name,
+     * the first one wins, as it would have first on the library path.
+     *
+     * @param jars jar to its files (name to SHA-1), in library path order
+     * @return the directory to put on the library path
+     */
+    public static Path assemble(Path nativesDirectory, Map<String, Map<String, String>> jars) throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        Map<String, String> origins = new TreeMap<>();
+        for (Map.Entry<String, Map<String, String>> jar : jars.entrySet()) {
+            for (Map.Entry<String, String> file : jar.getValue().entrySet()) {
+                String present = files.putIfAbsent(file.getKey(), file.getValue());
+                if (present == null) {
+                    origins.put(file.getKey(), jar.getKey());
+                } else if (!present.equals(file.getValue())) {
+                    CleanroomRelauncher.LOGGER.warn("{} of {} differs from the one in {}, which comes first and is used", file.getKey(), jar.getKey(), origins.get(file.getKey()));
+                }
+            }
+        }
+        StringBuilder content = new StringBuilder();
+        files.forEach((name, sha1) -> content.append(name).append('=').append(sha1).append('\n'));
+        Path set = nativesDirectory.resolve(SETS).resolve(DigestUtils.sha1Hex(content.toString()).substring(0, 16));
+        // Files missing from an existing set, e.g. quarantined ones, are linked again; nothing is deleted in case
+        // another instance has the set loaded
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Path object = objectOf(nativesDirectory, file.getValue());
+            Path link = set.resolve(file.getKey());
+            if (Files.isRegularFile(link) && Files.size(link) == Files.size(object)) continue;
+            Files.createDirectories(link.getParent());
+            Files.deleteIfExists(link);
+            try {
+                Files.createLink(link, object);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(object, link, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+        Path setFile = set.resolve(SET_FILE);
+        if (!Files.isRegularFile(setFile)) {
+            Files.createDirectories(set);
+            Path temp = set.resolve(SET_FILE + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                CleanroomRelauncher.GSON.toJson(files, writer);
+            }
+            Files.move(temp, setFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return set;
+    }
+
+    /**
+     * @return what the objects extracted from a natives jar should hash to, for the {@link CacheScrubber}; nothing
+     * if the jar was not extracted yet
+     */
+    public static List<CacheScrubber.Expected> objects(Path nativesDirectory, String jarRelative) {
+        List<CacheScrubber.Expected> expected = new ArrayList<>();
+        JarRecord record = readRecord(recordOf(nativesDirectory, jarRelative));
+        if (record != null) {
+            for (StoredFile file : record.files.values()) {
+                expected.add(CacheScrubber.Expected.sha1(objectOf(nativesDirectory, file.sha1), file.sha1));
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * @return what the files of a set should hash to, for the {@link CacheScrubber}; the links share their content
+     * with the objects, but a damaged link is what a launch would load
+     */
+    public static List<CacheScrubber.Expected> linked(Path set) {
+        List<CacheScrubber.Expected> expected = new ArrayList<>();
+        Map<String, String> files = readSet(set);
+        if (files != null) {
+            files.forEach((name, sha1) -> expected.add(CacheScrubber.Expected.sha1(set.resolve(name), sha1)));
+        }
+        return expected;
+    }
+
+    /**
+     * @return whether {@code dir} is a set of this store
+     */
+    static boolean isSet(Path dir) {
+        return Files.isRegularFile(dir.resolve(SET_FILE));
+    }
+
+    /**
+     * Deletes the objects no set refers to any more.
+     *
+     * @return the bytes freed
+     */
+    static long pruneObjects(Path nativesDirectory) throws IOException {
+        Path objects = nativesDirectory.resolve(OBJECTS);
+        if (!Files.isDirectory(objects)) {
+            return 0L;
+        }
+        Set<String> referenced = new HashSet<>();
+        Path sets = nativesDirectory.resolve(SETS);
+        if (Files.isDirectory(sets)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(sets, Files::isDirectory)) {
+                for (Path set : stream) {
+                    Map<String, String> files = readSet(set);
+                    if (files != null) {
+                        referenced.addAll(files.values());
+                    }
+                }
+            }
+        }
+        long cutoff = System.currentTimeMillis() - ORPHAN_GRACE_MILLIS;
+        long freed = 0L;
+        List<Path> orphans = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(objects)) {
+            walk.filter(Files::isRegularFile).forEach(orphans::add);
+        }
+        for (Path object : orphans) {
+            if (referenced.contains(object.getFileName().toString())) continue;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(object, BasicFileAttributes.class);
+                if (attributes.lastModifiedTime().toMillis() < cutoff) {
+                    Files.delete(object);
+                    freed += attributes.size();
+                }
+            } catch (IOException e) {
+                CleanroomRelauncher.LOGGER.debug("Unable to delete unused natives {}: {}", object, e.toString());
+            }
+        }
+        return freed;
+    }
+
+    private static StoredFile store(Path nativesDirectory, InputStream in, byte[] buffer) throws IOException {
+        Path objects = nativesDirectory.resolve(OBJECTS);
+        Files.createDirectories(objects);
+        Path temp = objects.resolve(UUID.randomUUID() + ".tmp");
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        StoredFile file = new StoredFile();
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    file.size += n;
+                }
+            }
+            file.sha1 = Hex.encodeHexString(digest.digest());
+            Path object = objectOf(nativesDirectory, file.sha1);
+            if (Files.isRegularFile(object) && Files.size(object) == file.size) {
+                return file;
+            }
+            Files.createDirectories(object.getParent());
+            Files.move(temp, object, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean hasObjects(Path nativesDirectory, JarRecord record) {
+        for (StoredFile file : record.files.values()) {
+            try {
+                if (Files.size(objectOf(nativesDirectory, file.sha1)) != file.size) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, String> toNames(JarRecord record) {
+        Map<String, String> names = new LinkedHashMap<>();
+        record.files.forEach((name, file) -> names.put(name, file.sha1));
+        return names;
+    }
+
+    private static Path objectOf(Path nativesDirectory, String sha1) {
+        return nativesDirectory.resolve(OBJECTS).resolve(sha1.substring(0, 2)).resolve(sha1);
+    }
+
+    private static Path recordOf(Path nativesDirectory, String jarRelative) {
+        return nativesDirectory.resolve(JARS).resolve(jarRelative + ".json");
+    }
+
+    private static JarRecord readRecord(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            JarRecord record = CleanroomRelauncher.GSON.fromJson(reader, JarRecord.class);
+            return record == null || record.files == null ? null : record;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> readSet(Path set) {
+        Path file = set.resolve(SET_FILE);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            return CleanroomRelauncher.GSON.fromJson(reader, new TypeToken<TreeMap<String, String>>() { }.getType());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static final class JarRecord {
+
+        String sha1;
+        long jarSize;
+        long jarModified;
+        // Name in the jar -> object
+        Map<String, StoredFile> files;
+
+    }
+
+    private static final class StoredFile {
+
+        String sha1;
+        long size;
+
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.cleanroommc.relauncher.download.cache;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the outcome of verifying a cached file (its SHA-1, or that an archive checked out), so verifying it
+ * again is a single stat. A result only stands while the file's size, time stamp and file key (the inode, where
+ * the file system has one) are unchanged; anything else invalidates it.
+ * <p>
+ * Results are kept in memory and written out by {@link #save()} once a batch of verifications is done.
+ */
+public final class VerificationLedger {
+
+    public static final String SHA1 = "sha1";
+    public static final String ARCHIVE = "archive";
+    // The CRC-32 a file was found to have, in hex
+    public static final String CRC32 = "crc32";
+
+    private static final Path FILE = CleanroomRelauncher.CACHE_DIR.resolve("verified.json");
+    private static Map<String, Entry> entries;
+    private static boolean dirty;
+
+    private VerificationLedger() { }
+
+    /**
+     * @return the result recorded for {@code file} under {@code kind}, or null if there is none or the file has
+     * changed since
+     */
+    public static synchronized String lookup(Path file, String kind) {
+        String key = keyOf(file);
+        Entry entry = entries().get(key);
+        if (entry == null) {
+            return null;
+        }
+        Entry current = describe(file);
+        if (current == null || current.size != entry.size || current.modified != entry.modified
+                || !Objects.equals(current.fileKey, entry.fileKey)) {
+            entries.remove(key);
+            dirty = true;
+            return null;
+        }
+        return entry.results == null ? null : entry.results.get(kind);
+    }
+
+    /**
+     * Records {@code result} for the current state of {@code file}. Results of other kinds survive only if the file
+     * is unchanged.
+     */
+    public static synchronized void record(Path file, String kind, String result) {
+        Entry current = describe(file);
+        if (current == null) {
+            return;
+        }
+        String key = keyOf(file);
+        Entry entry = entries().get(key);
+        if (entry != null && entry.size == current.size && entry.modified == current.modified
+                && Objects.equals(entry.fileKey, current.fileKey) && entry.results != null) {
+            current.results = entry.results;
+        }
+        current.results.put(kind, result);
+        entries.put(key, current);
+        dirty = true;
+    }
+
+    public static synchronized void forget(Path file) {
+        if (entries().remove(keyOf(file)) != null) {
+            dirty = true;
+        }
+    }
+
+    public static synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            Files.createDirectories(FILE.getParent());
+            Path temp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                CleanroomRelauncher.GSON.toJson(entries, writer);
+            }
+            Files.move(temp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to save {}: {}", FILE.getFileName(), e.toString());
+        }
+    }
+
+    private static Map<String, Entry> entries() {
+        if (entries == null) {
+            if (Files.exists(FILE)) {
+                try (Reader reader = Files.newBufferedReader(FILE)) {
+                    entries = CleanroomRelauncher.GSON.fromJson(reader, new TypeToken<HashMap<String, Entry>>() { }.getType());
+                } catch (IOException | RuntimeException e) {
+                    CleanroomRelauncher.LOGGER.warn("Unable to read {}, verifying cached files again: {}", FILE.getFileName(), e.toString());
+                }
+            }
+            if (entries == null) {
+                entries = new HashMap<>();
+            }
+        }
+        return entries;
+    }
+
+    private static String keyOf(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    private static Entry describe(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            Entry entry = new Entry();
+            entry.size = attributes.size();
+            entry.modified = attributes.lastModifiedTime().toMillis();
+            entry.fileKey = attributes.fileKey() == null ? null : attributes.fileKey().toString();
+            entry.results = new HashMap<>();
+            return entry;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+
+        @SerializedName("size")
+        long size;
+        @SerializedName("modified")
+        long modified;
+        @SerializedName("fileKey")
+        String fileKey;
+        @SerializedName("results")
+        Map<String, String> results;
+
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.cleanroommc.relauncher.download.java;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed-layout, memory-mapped record of which chunks of a multi-chunk download are on disk.
+ * <p>
+ * Layout: a 32 byte header ({@code magic, version, totalBytes, chunkSize, totalChunks}) followed by one
+ * 8 byte slot per chunk holding the chunk's CRC-32 and a completion flag. Each chunk owns its slot, so
+ * completing a chunk never contends with other chunks; the mapping is forced to disk in batches.
+ */
+final class ChunkJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x43524A4E; // "CRJN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 8;
+    private static final byte STATE_COMPLETE = 1;
+    private static final int FLUSH_BATCH = 8;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long totalBytes;
+    private final long chunkSize;
+    private final int totalChunks;
+    private final AtomicLongArray completed;
+    private final AtomicInteger contiguous = new AtomicInteger(0);
+    private final AtomicInteger unflushed = new AtomicInteger(0);
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    private ChunkJournal(Path file, FileChannel channel, MappedByteBuffer buffer, long totalBytes, long chunkSize, int totalChunks) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.totalBytes = totalBytes;
+        this.chunkSize = chunkSize;
+        this.totalChunks = totalChunks;
+        this.completed = new AtomicLongArray((totalChunks + 63) >>> 6);
+    }
+
+    /**
+     * Opens the journal for a download, starting a fresh one if the file is missing or was written for a
+     * different size or chunk layout.
+     */
+    static ChunkJournal open(Path file, long totalBytes, long chunkSize) throws IOException {
+        int totalChunks = (int) ((totalBytes + chunkSize - 1) / chunkSize);
+        long size = HEADER_SIZE + (long) totalChunks * SLOT_SIZE;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean matches = channel.size() == size && headerMatches(channel, totalBytes, chunkSize, totalChunks);
+            if (!matches) {
+                channel.truncate(0);
+                ByteBuffer zeroes = ByteBuffer.allocate((int) Math.min(size, 64 * 1024));
+                for (long pos = 0; pos < size; pos += zeroes.capacity()) {
+                    zeroes.clear();
+                    zeroes.limit((int) Math.min(zeroes.capacity(), size - pos));
+                    channel.write(zeroes, pos);
+                }
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            ChunkJournal journal = new ChunkJournal(file, channel, buffer, totalBytes, chunkSize, totalChunks);
+            if (matches) {
+                journal.loadCompleted();
+            } else {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(8, totalBytes);
+                buffer.putLong(16, chunkSize);
+                buffer.putInt(24, totalChunks);
+                buffer.force();
+            }
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static boolean headerMatches(FileChannel channel, long totalBytes, long chunkSize, int totalChunks) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) return false;
+        }
+        return header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getLong(8) == totalBytes
+                && header.getLong(16) == chunkSize && header.getInt(24) == totalChunks;
+    }
+
+    private void loadCompleted() {
+        for (int i = 0; i < this.totalChunks; i++) {
+            if (this.buffer.get(stateOffset(i)) == STATE_COMPLETE) {
+                this.setBit(i);
+            }
+        }
+        this.advanceContiguous();
+    }
+
+    /**
+     * Re-reads every chunk the journal claims is complete and drops the ones whose CRC-32 no longer matches,
+     * e.g. because the machine went down before the page cache reached the disk.
+     *
+     * @return the number of bytes that remain trusted
+     */
+    long verifyAgainst(Path partFile) throws IOException {
+        if (!Files.exists(partFile)) {
+            for (int i = 0; i < this.totalChunks; i++) {
+                if (this.isComplete(i)) this.clear(i);
+            }
+            return 0L;
+        }
+        long trusted = 0L;
+        ByteBuffer readBuffer = ByteBuffer.allocate(256 * 1024);
+        CRC32 crc = new CRC32();
+        try (FileChannel part = FileChannel.open(partFile, StandardOpenOption.READ)) {
+            for (int i = 0; i < this.totalChunks; i++) {
+                if (!this.isComplete(i)) continue;
+                long start = this.chunkStart(i);
+                long end = this.chunkEnd(i);
+                crc.reset();
+                long pos = start;
+                while (pos <= end) {
+                    readBuffer.clear();
+                    readBuffer.limit((int) Math.min(readBuffer.capacity(), end - pos + 1));
+                    int n = part.read(readBuffer, pos);
+                    if (n <= 0) break;
+                    crc.update(readBuffer.array(), 0, n);
+                    pos += n;
+                }
+                if (pos <= end || (int) crc.getValue() != this.buffer.getInt(crcOffset(i))) {
+                    CleanroomRelauncher.LOGGER.warn("Chunk {} of {} failed its checksum, downloading it again", i, partFile.getFileName());
+                    this.clear(i);
+                } else {
+                    trusted += end - start + 1;
+                }
+            }
+        }
+        return trusted;
+    }
+
+    int totalChunks() {
+        return this.totalChunks;
+    }
+
+    long chunkStart(int chunk) {
+        return chunk * this.chunkSize;
+    }
+
+    long chunkEnd(int chunk) {
+        return Math.min(this.totalBytes - 1, (chunk + 1) * this.chunkSize - 1);
+    }
+
+    boolean isComplete(int chunk) {
+        return (this.completed.get(chunk >>> 6) & (1L << chunk)) != 0;
+    }
+
+    int completedCount() {
+        int count = 0;
+        for (int i = 0; i < this.completed.length(); i++) {
+            count += Long.bitCount(this.completed.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of leading bytes covered by an unbroken run of completed chunks
+     */
+    long contiguousBytes() {
+        return Math.min(this.totalBytes, this.contiguous.get() * this.chunkSize);
+    }
+
+    void markComplete(int chunk, int crc) {
+        this.buffer.putInt(crcOffset(chunk), crc);
+        this.buffer.put(stateOffset(chunk), STATE_COMPLETE);
+        this.setBit(chunk);
+        this.advanceContiguous();
+        if (this.unflushed.incrementAndGet() >= FLUSH_BATCH) {
+            this.flush();
+        }
+    }
+
+    private void clear(int chunk) {
+        this.buffer.put(stateOffset(chunk), (byte) 0);
+        long mask = 1L << chunk;
+        int word = chunk >>> 6;
+        long current;
+        do {
+            current = this.completed.get(word);
+        } while (!this.completed.compareAndSet(word, current, current & ~mask));
+        this.contiguous.set(0);
+        this.advanceContiguous();
+    }
+
+    private void setBit(int chunk) {
+        long mask = 1L << chunk;
+        int word = chunk >>> 6;
+        long current;
+        do {
+            current = this.completed.get(word);
+        } while ((current & mask) == 0 && !this.completed.compareAndSet(word, current, current | mask));
+    }
+
+    private void advanceContiguous() {
+        int current;
+        while ((current = this.contiguous.get()) < this.totalChunks && this.isComplete(current)) {
+            this.contiguous.compareAndSet(current, current + 1);
+        }
+    }
+
+    void flush() {
+        // One thread forces the mapping at a time; completions that race with it are picked up by the next batch
+        if (this.flushing.compareAndSet(false, true)) {
+            try {
+                this.unflushed.set(0);
+                this.buffer.force();
+            } finally {
+                this.flushing.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // delete() closes early, the enclosing try-with-resources closes again
+        if (this.channel.isOpen()) {
+            this.buffer.force();
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Best-effort removal once the download has completed. On Windows the file stays locked until the mapping
+     * is garbage collected, in which case it is left behind without its {@code .part} file; the next download of
+     * the same archive removes it before starting.
+     */
+    void delete() {
+        try {
+            this.close();
+            Files.deleteIfExists(this.file);
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.debug("Unable to delete download journal {}: {}", this.file.getFileName(), e.toString());
+        }
+    }
+
+    private static int crcOffset(int chunk) {
+        return HEADER_SIZE + chunk * SLOT_SIZE;
+    }
+
+    private static int stateOffset(int chunk) {
+        return HEADER_SIZE + chunk * SLOT_SIZE + 4;
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.cleanroommc.relauncher.download.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tracks how many leading bytes of a {@code .part} file are complete, so a consumer can read the archive
+ * while it is still being downloaded. Single-stream downloads advance it as bytes are written; multi-chunk
+ * downloads advance it to the end of the contiguous run of completed chunks.
+ */
+final class DownloadWatermark {
+
+    private final Path partFile;
+    private final Path finalFile;
+
+    private long available;
+    private boolean finished;
+    private IOException failure;
+
+    DownloadWatermark(Path partFile, Path finalFile) {
+        this.partFile = partFile;
+        this.finalFile = finalFile;
+    }
+
+    synchronized void advance(long bytes) {
+        if (bytes > this.available) {
+            this.available = bytes;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Called when the download has to start over from byte zero; anything already consumed is no longer valid.
+     */
+    synchronized void restart() {
+        if (this.available > 0) {
+            this.abort(new IOException("Download restarted from the beginning"));
+        }
+    }
+
+    synchronized void finish() {
+        this.finished = true;
+        this.notifyAll();
+    }
+
+    synchronized void abort(IOException cause) {
+        if (this.failure == null) {
+            this.failure = cause;
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Blocks until more than {@code position} bytes are available, returning the new limit, or -1 once the
+     * download has finished and nothing is left past {@code position}.
+     */
+    private synchronized long awaitBeyond(long position) throws IOException {
+        while (true) {
+            if (this.failure != null) {
+                throw new IOException("Download did not complete", this.failure);
+            }
+            if (this.available > position) {
+                return this.available;
+            }
+            if (this.finished) {
+                return -1L;
+            }
+            try {
+                this.wait(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for download");
+            }
+        }
+    }
+
+    InputStream openStream() {
+        return new WatermarkInputStream();
+    }
+
+    private final class WatermarkInputStream extends InputStream {
+
+        private FileChannel channel;
+        private long position;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = this.read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            long limit = awaitBeyond(this.position);
+            if (limit < 0) return -1;
+            if (this.channel == null) {
+                this.channel = this.openChannel();
+            }
+            int toRead = (int) Math.min(len, limit - this.position);
+            int n = this.channel.read(ByteBuffer.wrap(b, off, toRead), this.position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of " + partFile.getFileName() + " at byte " + this.position);
+            }
+            this.position += n;
+            return n;
+        }
+
+        private FileChannel openChannel() throws IOException {
+            try {
+                return FileChannel.open(partFile, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // The download already completed and the .part file was moved into place
+                if (Files.exists(finalFile)) {
+                    return FileChannel.open(finalFile, StandardOpenOption.READ);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.cleanroommc.relauncher.download.java;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Remembers, per download host, whether it serves byte ranges, so a download whose size is already known
+ * from the vendor API can start without probing the server first.
+ */
+final class HostCapabilityCache {
+
+    private static final long TTL_MILLIS = Duration.ofDays(7).toMillis();
+
+    private final Path file;
+    private final Map<String, Entry> entries;
+
+    private HostCapabilityCache(Path file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    static HostCapabilityCache load(Path file) {
+        Map<String, Entry> entries = null;
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                entries = CleanroomRelauncher.GSON.fromJson(reader, new TypeToken<LinkedHashMap<String, Entry>>() { }.getType());
+            } catch (IOException | RuntimeException e) {
+                CleanroomRelauncher.LOGGER.warn("Unable to read {}, probing download hosts again: {}", file.getFileName(), e.toString());
+            }
+        }
+        return new HostCapabilityCache(file, entries == null ? new LinkedHashMap<>() : entries);
+    }
+
+    /**
+     * @return whether the host of {@code url} serves byte ranges, or null if that is unknown or too old to trust
+     */
+    synchronized Boolean acceptsRanges(String url) {
+        Entry entry = this.entries.get(hostOf(url));
+        if (entry == null) {
+            return null;
+        }
+        boolean disableCacheTTL = CleanroomRelauncher.CONFIG != null && CleanroomRelauncher.CONFIG.isDisableCacheTTL();
+        if (!disableCacheTTL && System.currentTimeMillis() - entry.checkedAt > TTL_MILLIS) {
+            return null;
+        }
+        return entry.acceptsRanges;
+    }
+
+    synchronized void record(String url, boolean acceptsRanges) {
+        Entry entry = new Entry();
+        entry.acceptsRanges = acceptsRanges;
+        entry.checkedAt = System.currentTimeMillis();
+        this.entries.put(hostOf(url), entry);
+        this.save();
+    }
+
+    /**
+     * Drops what is known about the host of {@code url}, e.g. after a download that relied on it failed.
+     */
+    synchronized void forget(String url) {
+        if (this.entries.remove(hostOf(url)) != null) {
+            this.save();
+        }
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(this.file.getParent());
+            try (Writer writer = Files.newBufferedWriter(this.file)) {
+                CleanroomRelauncher.GSON.toJson(this.entries, writer);
+            }
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to save {}: {}", this.file.getFileName(), e.toString());
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            URL parsed = new URL(url);
+            String host = parsed.getHost().toLowerCase(Locale.ROOT);
+            return parsed.getPort() < 0 ? host : host + ":" + parsed.getPort();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    private static final class Entry {
+
+        @SerializedName("acceptsRanges")
+        boolean acceptsRanges;
+        @SerializedName("checkedAt")
+        long checkedAt;
+
+    }
+
+}
@@ -0,0 +1,508 @@
+package com.cleanroommc.relauncher.download.java;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.cleanroommc.relauncher.download.cache.CacheLeases;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+/**
+ * Extracts Java archives and verifies them in the same pass: zip entries are checked against the CRC-32 and
+ * size recorded in the central directory, tar entries against their header size, and the gzip trailer's
+ * CRC-32 is checked once the whole stream has been consumed. Callers extract into a staging directory and
+ * {@link #promote(Path, Path) promote} it only once extraction succeeded.
+ * <p>
+ * Given the {@link JavaFileManifest} of an installed release, extraction is a delta against it: zip entries whose
+ * central directory size and CRC-32 match an installed file, and tar entries whose bytes turn out to match one,
+ * are hardlinked from the installed tree rather than written.
+ * <p>
+ * Parts of a JDK the game never uses at runtime (sources, man pages, demos, headers, license texts, and the
+ * packaged modules unless a runtime image is going to be linked from them) are not extracted at all.
+ */
+final class JavaArchiveExtractor {
+
+    private static final int MAX_EXTRACT_THREADS = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Below the archive's top directory (and Contents/Home on macOS)
+    private static final String[] SKIPPED_PATHS = { "lib/src.zip", "man/", "demo/", "sample/", "include/", "legal/" };
+    private static final String JMODS_PATH = "jmods/";
+    private static final String MAC_HOME = "Contents/Home/";
+    // A replaced tree, on its way out
+    static final String OLD_SUFFIX = ".old";
+
+    private JavaArchiveExtractor() {}
+
+    /**
+     * Thrown when the archive itself is damaged (bad CRC, short entry, unreadable headers), as opposed to a
+     * failure while writing the extracted files. A fresh download is the only fix.
+     */
+    static final class CorruptArchiveException extends IOException {
+
+        CorruptArchiveException(String message) {
+            super(message);
+        }
+
+        CorruptArchiveException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+    }
+
+    /**
+     * Thrown by {@link #promote} when the game of another instance runs from the tree it would replace.
+     */
+    static final class InUseException extends IOException {
+
+        InUseException(String message) {
+            super(message);
+        }
+
+    }
+
+    /**
+     * @param previous  the manifest of the installed release to reuse files from, or null
+     * @param keepJmods whether to extract the packaged modules jlink needs
+     * @return the manifest of the extracted tree
+     */
+    static JavaFileManifest extractZip(Path zipFile, Path targetDir, JavaFileManifest previous, boolean keepJmods) throws IOException {
+        ZipFile zip;
+        try {
+            zip = new ZipFile(zipFile.toFile());
+        } catch (IOException e) {
+            throw new CorruptArchiveException("Unable to open " + zipFile.getFileName() + " as a zip archive", e);
+        }
+        try {
+            // Walk the central directory once: validate every entry and collect the directory set up front
+            JavaFileManifest manifest = new JavaFileManifest();
+            List<ZipEntry> files = new ArrayList<>();
+            Set<Path> directories = new LinkedHashSet<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (isSkipped(entry.getName(), keepJmods)) {
+                    continue;
+                }
+                Path outPath = targetDir.resolve(entry.getName()).normalize();
+                if (!outPath.startsWith(targetDir)) {
+                    throw new IOException("Zip entry outside target dir: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    directories.add(outPath);
+                } else {
+                    files.add(entry);
+                    directories.add(outPath.getParent());
+                }
+            }
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+
+            // Largest entries first, so a big file (e.g. lib/modules) never ends up as the tail of the run
+            files.sort((a, b) -> Long.compare(b.getCompressedSize(), a.getCompressedSize()));
+
+            int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+            int threads = Math.max(1, Math.min(Math.min(MAX_EXTRACT_THREADS, cores), files.size()));
+            AtomicInteger nextEntry = new AtomicInteger(0);
+            AtomicBoolean failed = new AtomicBoolean(false);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    CRC32 crc = new CRC32();
+                    int index;
+                    while (!failed.get() && (index = nextEntry.getAndIncrement()) < files.size()) {
+                        try {
+                            extractZipEntry(zip, files.get(index), targetDir, buffer, crc, previous, manifest);
+                        } catch (IOException e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                    }
+                    return null;
+                }));
+            }
+            pool.shutdown();
+            awaitAll(futures, pool, failed, zipFile);
+            return manifest;
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void extractZipEntry(ZipFile zip, ZipEntry entry, Path targetDir, byte[] buffer, CRC32 crc,
+                                        JavaFileManifest previous, JavaFileManifest manifest) throws IOException {
+        Path outPath = targetDir.resolve(entry.getName()).normalize();
+        manifest.record(entry.getName(), entry.getSize(), entry.getCrc());
+        // The archive's SHA-256 was checked after download, so the central directory can be trusted here
+        Path installed = previous == null ? null : previous.reusable(entry.getName(), entry.getSize(), entry.getCrc());
+        if (installed != null) {
+            manifest.reuse(installed, outPath);
+            return;
+        }
+        crc.reset();
+        long written = 0L;
+        try (InputStream in = zip.getInputStream(entry);
+             OutputStream os = Files.newOutputStream(outPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int len;
+            while ((len = readArchive(in, buffer, entry.getName())) > 0) {
+                crc.update(buffer, 0, len);
+                os.write(buffer, 0, len);
+                written += len;
+            }
+        }
+        if (entry.getSize() >= 0 && written != entry.getSize()) {
+            throw new CorruptArchiveException("Size mismatch for " + entry.getName() + ": expected " + entry.getSize() + " bytes, got " + written);
+        }
+        if (entry.getCrc() >= 0 && crc.getValue() != entry.getCrc()) {
+            throw new CorruptArchiveException(String.format("CRC mismatch for %s: expected %08x, got %08x", entry.getName(), entry.getCrc(), crc.getValue()));
+        }
+    }
+
+    /**
+     * @param previous  the manifest of the installed release to reuse files from, or null
+     * @param keepJmods whether to extract the packaged modules jlink needs
+     * @return the manifest of the extracted tree
+     */
+    static JavaFileManifest extractTarGz(Path tarGzFile, Path targetDir, JavaFileManifest previous, boolean keepJmods) throws IOException {
+        try (InputStream fis = Files.newInputStream(tarGzFile)) {
+            return extractTarGz(fis, targetDir, previous, keepJmods);
+        }
+    }
+
+    static JavaFileManifest extractTarGz(InputStream source, Path targetDir, JavaFileManifest previous, boolean keepJmods) throws IOException {
+        GzipCompressorInputStream gis;
+        try {
+            gis = new GzipCompressorInputStream(new BufferedInputStream(source, BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new CorruptArchiveException("Invalid gzip header", e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        JavaFileManifest manifest = new JavaFileManifest();
+        try (TarArchiveInputStream tis = new TarArchiveInputStream(gis)) {
+            try {
+                extractTarEntries(tis, targetDir, buffer, previous, manifest, keepJmods);
+            } catch (CorruptArchiveException e) {
+                throw e;
+            } catch (IOException e) {
+                // Garbage headers from a damaged stream can surface as odd write failures; let the gzip CRC decide
+                try {
+                    while (gis.read(buffer) >= 0) { }
+                } catch (IOException streamError) {
+                    throw new CorruptArchiveException("Archive is corrupt", streamError);
+                }
+                throw e;
+            }
+            // The tar end-of-archive marker comes before the gzip trailer; drain the stream so its CRC-32 gets checked
+            while (readArchive(gis, buffer, "gzip trailer") >= 0) { }
+        }
+        return manifest;
+    }
+
+    private static void extractTarEntries(TarArchiveInputStream tis, Path targetDir, byte[] buffer,
+                                          JavaFileManifest previous, JavaFileManifest manifest, boolean keepJmods) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] installedBuffer = new byte[BUFFER_SIZE];
+        boolean posix = Files.getFileStore(targetDir).supportsFileAttributeView("posix");
+        TarArchiveEntry entry;
+        while ((entry = nextTarEntry(tis)) != null) {
+            if (isSkipped(entry.getName(), keepJmods)) {
+                continue; // The tar stream skips the entry's data by itself
+            }
+            Path outPath = targetDir.resolve(entry.getName()).normalize();
+            if (!outPath.startsWith(targetDir)) {
+                throw new IOException("Tar entry outside target dir: " + entry.getName());
+            }
+            if (entry.isDirectory()) {
+                Files.createDirectories(outPath);
+            } else {
+                Files.createDirectories(outPath.getParent());
+                crc.reset();
+                Path installed = previous == null ? null : previous.sameSize(entry.getName(), entry.getSize());
+                long written = installed == null
+                        ? writeTarEntry(tis, entry.getName(), outPath, buffer, 0, crc, null, 0L)
+                        : compareTarEntry(tis, entry.getName(), outPath, installed, buffer, installedBuffer, crc, manifest);
+                if (written != entry.getSize()) {
+                    throw new CorruptArchiveException("Size mismatch for " + entry.getName() + ": expected " + entry.getSize() + " bytes, got " + written);
+                }
+                manifest.record(entry.getName(), written, crc.getValue());
+                if (installed != null && Files.isSameFile(installed, outPath)) {
+                    continue; // Linked, and the installed file has its permissions already
+                }
+                // New files are readable and writable already; only executables need their mode from the archive
+                if (posix && (entry.getMode() & 0111) != 0) {
+                    Files.setPosixFilePermissions(outPath, permissionsOf(entry.getMode()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether {@code entryName} is payload the relaunched game never uses
+     */
+    static boolean isSkipped(String entryName, boolean keepJmods) {
+        String name = entryName.replace('\\', '/');
+        while (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        int slash = name.indexOf('/');
+        if (slash < 0) {
+            return false;
+        }
+        name = name.substring(slash + 1);
+        if (name.startsWith(MAC_HOME)) {
+            name = name.substring(MAC_HOME.length());
+        }
+        if (!keepJmods && name.startsWith(JMODS_PATH)) {
+            return true;
+        }
+        for (String skipped : SKIPPED_PATHS) {
+            if (name.equals(skipped) || skipped.endsWith("/") && name.startsWith(skipped)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<PosixFilePermission> permissionsOf(int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] bits = PosixFilePermission.values(); // OWNER_READ (0400) down to OTHERS_EXECUTE (0001)
+        for (int i = 0; i < bits.length; i++) {
+            if ((mode & (0400 >> i)) != 0) {
+                permissions.add(bits[i]);
+            }
+        }
+        // Keep the owner able to replace or delete it on the next update
+        permissions.add(PosixFilePermission.OWNER_READ);
+        permissions.add(PosixFilePermission.OWNER_WRITE);
+        return permissions;
+    }
+
+    /**
+     * Reads the entry while comparing it with the installed file of the same size. Hardlinks the installed file if
+     * they match to the end; otherwise writes the file out, starting with the prefix both have in common.
+     *
+     * @return the size of the entry
+     */
+    private static long compareTarEntry(TarArchiveInputStream tis, String entryName, Path outPath, Path installed,
+                                        byte[] buffer, byte[] installedBuffer, CRC32 crc, JavaFileManifest manifest) throws IOException {
+        long matched = 0L;
+        try (InputStream in = Files.newInputStream(installed)) {
+            int len;
+            while ((len = readArchive(tis, buffer, entryName)) > 0) {
+                if (!readFully(in, installedBuffer, len) || !regionEquals(buffer, installedBuffer, len)) {
+                    return writeTarEntry(tis, entryName, outPath, buffer, len, crc, installed, matched);
+                }
+                crc.update(buffer, 0, len);
+                matched += len;
+            }
+        }
+        manifest.reuse(installed, outPath);
+        return matched;
+    }
+
+    /**
+     * Writes the entry to {@code outPath}: the first {@code prefix} bytes copied from {@code installed}, then
+     * {@code pending} bytes already read into {@code buffer}, then the rest of the entry.
+     *
+     * @return the size of the entry
+     */
+    private static long writeTarEntry(TarArchiveInputStream tis, String entryName, Path outPath, byte[] buffer, int pending,
+                                      CRC32 crc, Path installed, long prefix) throws IOException {
+        long written = 0L;
+        try (OutputStream os = Files.newOutputStream(outPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (prefix > 0L) {
+                byte[] copy = new byte[BUFFER_SIZE];
+                try (InputStream in = Files.newInputStream(installed)) {
+                    while (written < prefix) {
+                        int len = in.read(copy, 0, (int) Math.min(copy.length, prefix - written));
+                        if (len < 0) {
+                            throw new IOException(installed + " changed while it was compared");
+                        }
+                        os.write(copy, 0, len);
+                        written += len;
+                    }
+                }
+            }
+            if (pending > 0) {
+                crc.update(buffer, 0, pending);
+                os.write(buffer, 0, pending);
+                written += pending;
+            }
+            int len;
+            while ((len = readArchive(tis, buffer, entryName)) > 0) {
+                crc.update(buffer, 0, len);
+                os.write(buffer, 0, len);
+                written += len;
+            }
+        }
+        return written;
+    }
+
+    private static boolean readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int len = in.read(buffer, read, length - read);
+            if (len < 0) {
+                return false;
+            }
+            read += len;
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static TarArchiveEntry nextTarEntry(TarArchiveInputStream tis) throws CorruptArchiveException {
+        try {
+            return tis.getNextTarEntry();
+        } catch (IOException e) {
+            throw new CorruptArchiveException("Unreadable tar header", e);
+        }
+    }
+
+    private static int readArchive(InputStream in, byte[] buffer, String entryName) throws CorruptArchiveException {
+        try {
+            return in.read(buffer);
+        } catch (IOException e) {
+            throw new CorruptArchiveException("Unable to read " + entryName + " from archive", e);
+        }
+    }
+
+    /**
+     * Replaces {@code targetDir} with the fully extracted {@code stagingDir} in two renames: the current tree
+     * moves aside to {@code <target>.old}, then the staged tree takes its place. The target is never left partly
+     * deleted, though it is briefly missing between the renames. If the first rename fails, nothing has changed;
+     * if the second one does, the old tree is moved back. The old tree is deleted afterwards.
+     * <p>
+     * Nothing is renamed while the game of a live instance runs from either tree: its JVM keeps loading files by
+     * path as it goes, and would pick them up from another build. {@link InUseException} leaves both trees as they
+     * are, for the caller to try again later.
+     */
+    static void promote(Path stagingDir, Path targetDir) throws IOException {
+        Path old = CacheLeases.exclusively(() -> {
+            for (Path dir : new Path[] { stagingDir, targetDir }) {
+                if (Files.exists(dir) && CacheLeases.isHeld(dir)) {
+                    throw new InUseException(dir.getFileName() + " is in use by another instance");
+                }
+            }
+            Path aside = null;
+            if (Files.exists(targetDir)) {
+                aside = targetDir.resolveSibling(targetDir.getFileName() + OLD_SUFFIX);
+                deleteOld(aside);
+                if (Files.exists(aside)) {
+                    throw new IOException(aside.getFileName() + " from an earlier replacement could not be deleted");
+                }
+                move(targetDir, aside);
+            }
+            try {
+                move(stagingDir, targetDir);
+            } catch (IOException e) {
+                if (aside != null) {
+                    try {
+                        move(aside, targetDir);
+                    } catch (IOException restore) {
+                        e.addSuppressed(restore);
+                    }
+                }
+                throw e;
+            }
+            return aside;
+        });
+        if (old != null) {
+            deleteOld(old);
+        }
+    }
+
+    /**
+     * Deletes a tree {@link #promote} renamed aside. Whatever cannot be deleted yet, such as files a virus scanner
+     * still has open on Windows, is left for a later launch.
+     */
+    static void deleteOld(Path old) {
+        try {
+            deleteTree(old);
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.debug("Unable to delete {} yet: {}", old, e.toString());
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void awaitAll(List<Future<Void>> futures, ExecutorService pool, AtomicBoolean failed, Path archive) throws IOException {
+        try {
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+            pool.shutdownNow();
+            throw new IOException("Interrupted while extracting " + archive.getFileName(), e);
+        } catch (ExecutionException e) {
+            failed.set(true);
+            pool.shutdownNow();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Failed to extract " + archive.getFileName(), cause);
+        }
+    }
+
+}
@@ -1,40 +1,52 @@
 package com.cleanroommc.relauncher.download.java;
 
 import com.cleanroommc.relauncher.CleanroomRelauncher;
-import com.cleanroommc.relauncher.download.cache.CacheVerification;
+import com.cleanroommc.relauncher.download.cache.CacheScrubber;
+import com.cleanroommc.relauncher.download.DownloadThrottle;
 
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.nio.file.attribute.PosixFilePermission;
-import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
 import java.util.Locale;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.BitSet;
-import java.util.Properties;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.CRC32;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 
 public final class JavaDownloader {
 
@@ -42,13 +54,25 @@ public final class JavaDownloader {
     public static final int DEFAULT_JAVA_VERSION = 25;
     private static final int MAX_DOWNLOAD_RETRIES = 3;
     private static final long CHUNK_SIZE = 4L * 1024L * 1024L; // 4 MiB
+    private static final int CHUNK_WRITE_BUFFER_SIZE = 1024 * 1024; // 1 MiB, one buffer per worker
     private static final int CHUNK_TIMEOUT_MINUTES = 10;
     private static final int CHUNK_RETRY_ATTEMPTS = 3;
     private static final int CONNECT_TIMEOUT_MS = 30_000;
     private static final int READ_TIMEOUT_MS = 120_000;
     private static final int REDIRECT_LIMIT = 7;
     private static final int TEST_RANGE_TIMEOUT_MS = 15_000;
+    private static final int MAX_EXTRACT_ATTEMPTS = 2;
+    // Partial downloads untouched for this long are abandoned
+    private static final long STALE_PARTIAL_MILLIS = TimeUnit.DAYS.toMillis(1);
     private static final String USER_AGENT = "Mozilla/5.0 CleanroomRelauncher/1.0";
+    // Adoptium's own endpoint for Temurin archives; it usually redirects to the very asset the vendor link names
+    private static final String ADOPTIUM_BINARY_API = "https://api.adoptium.net/v3/binary/";
+
+    private static HostCapabilityCache hostCapabilities;
+    private static VendorResolutionCache resolutionCache;
+
+    // Suffix of the directory a prefetched update is installed into until the next launch swaps it in
+    private static final String UPDATE_SUFFIX = ".update";
 
     private JavaDownloader() {}
 
@@ -82,10 +106,38 @@ public final class JavaDownloader {
         Path temDir = baseDir.resolve(String.format("temurin-%d-%s-%s", majorVersion, os, arch));
         Path graDir = baseDir.resolve(String.format("graalvm-%d-%s-%s", majorVersion, os, arch));
         boolean wantGraal = vendor != null && vendor.equalsIgnoreCase("graalvm");
-        Path javaBin = wantGraal ? findJavaBinary(graDir) : findJavaBinary(temDir);
+        Path installDir = wantGraal ? graDir : temDir;
+        JavaInstallReceipt receipt = JavaInstallReceipt.read(installDir);
+        if (receipt != null) {
+            CleanroomRelauncher.LOGGER.info("Found existing Java {} installation at: {}", receipt.version(), receipt.executable());
+            return linkedRuntimeOr(receipt.executable(), installDir, receipt.vendor(), os, arch);
+        }
+        Path updateDir = installDir.resolveSibling(installDir.getFileName() + UPDATE_SUFFIX);
+        JavaInstallReceipt pending = JavaInstallReceipt.read(updateDir);
+        if (pending != null) {
+            // Installed there because another instance still runs from the damaged install it replaces
+            CleanroomRelauncher.LOGGER.info("Using Java {} from {} until it can replace {}", pending.version(), updateDir,
+                    installDir.getFileName());
+            return linkedRuntimeOr(pending.executable(), installDir, pending.vendor(), os, arch);
+        }
+        // Installs from before receipts were written get one now, so this is the last time they are searched.
+        // Ours always come with a file manifest; one without a receipt had it withdrawn by the cache scrubber.
+        Path javaBin = Files.exists(installDir.resolve(JavaFileManifest.FILE_NAME)) ? null : findJavaBinary(installDir);
         if (javaBin != null && Files.isRegularFile(javaBin)) {
             CleanroomRelauncher.LOGGER.info("Found existing Java installation at: {}", javaBin.toAbsolutePath());
-            return javaBin.toAbsolutePath().toString();
+            String vendorSlug = wantGraal ? "graalvm" : "temurin";
+            writeReceipt(installDir, javaBin, vendorSlug, majorVersion, os, arch, Files.isDirectory(javaBin.getParent().resolveSibling("jmods")) ? "jdk" : "jre");
+            return linkedRuntimeOr(javaBin, installDir, vendorSlug, os, arch);
+        }
+
+        if (CleanroomRelauncher.CONFIG == null || CleanroomRelauncher.CONFIG.isReuseSystemJava()) {
+            String vendorSlug = wantGraal ? "graalvm" : "temurin";
+            JavaInstallReceipt system = findSystemJava(majorVersion, vendorSlug, os, arch);
+            if (system != null) {
+                CleanroomRelauncher.LOGGER.info("Reusing Java {} already installed at: {}", system.version(), system.executable());
+                writeReceipt(installDir, system.executable(), vendorSlug, majorVersion, os, arch, "system");
+                return linkedRuntimeOr(system.executable(), installDir, vendorSlug, os, arch);
+            }
         }
 
         CleanroomRelauncher.LOGGER.info("Downloading Java {} {} for {}-{}", majorVersion, vendor != null ? vendor : "Adoptium", os, arch);
@@ -93,88 +145,467 @@ public final class JavaDownloader {
         
         String vendorSlug = downloadInfo.vendorUsed;
         Path targetDir = baseDir.resolve(String.format("%s-%d-%s-%s", vendorSlug, majorVersion, os, arch));
-        Files.createDirectories(targetDir);
-        Path archiveFile = baseDir.resolve(String.format("%s-%d-%s-%s%s", vendorSlug, majorVersion, os, arch, archiveExt));
+        javaBin = install(downloadInfo, targetDir, null, majorVersion, os, arch, archiveExt, progressListener);
+        return linkedRuntimeOr(javaBin, targetDir, vendorSlug, os, arch);
+    }
 
-        cleanupStalePartialFiles(baseDir, archiveFile.getFileName().toString());
-        
-        downloadWithVerification(downloadInfo.downloadUrl, archiveFile, progressListener, MAX_DOWNLOAD_RETRIES);
+    /**
+     * Downloads, verifies and extracts the resolved archive into {@code targetDir} and writes its receipt. While
+     * another instance runs from {@code targetDir}, the new tree goes to its pending update directory instead.
+     *
+     * @param previous the file manifest of an installed release of the same Java, whose unchanged files are
+     *                 hardlinked instead of extracted again; null to extract everything
+     * @return the installed java executable
+     */
+    private static Path install(DownloadInfo downloadInfo, Path targetDir, JavaFileManifest previous, int majorVersion, String os, String arch,
+                                String archiveExt, ProgressListener progressListener) throws IOException {
+        Path baseDir = targetDir.getParent();
+        String vendorSlug = downloadInfo.vendorUsed;
+        Path stagingDir = baseDir.resolve(targetDir.getFileName().toString() + ".staging");
+        Path archiveFile = baseDir.resolve(targetDir.getFileName().toString() + archiveExt);
 
-        if (archiveExt.equals(".zip")) {
-            extractZip(archiveFile, targetDir);
-        } else {
-            extractTarGz(archiveFile, targetDir);
+        // Extraction doubles as verification: a damaged archive is thrown away and downloaded once more
+        JavaFileManifest manifest;
+        // The packaged modules are only needed to link a runtime image from them
+        boolean keepJmods = CleanroomRelauncher.CONFIG != null && CleanroomRelauncher.CONFIG.isJlinkRuntime();
+        for (int attempt = 1; ; attempt++) {
+            JavaArchiveExtractor.deleteTree(stagingDir);
+            Files.createDirectories(stagingDir);
+            // A retry after a corrupt archive sticks to the vendor's own link in case a mirror served bad data
+            List<String> origins = attempt == 1 ? downloadInfo.origins : Collections.singletonList(downloadInfo.downloadUrl);
+            try {
+                if (archiveExt.equals(".zip")) {
+                    // The zip central directory sits at the end of the archive, so it can only be extracted once complete
+                    downloadWithVerification(origins, archiveFile, progressListener, MAX_DOWNLOAD_RETRIES, null, downloadInfo.sha256, downloadInfo.size);
+                    manifest = JavaArchiveExtractor.extractZip(archiveFile, stagingDir, previous, keepJmods);
+                } else {
+                    manifest = downloadAndExtractTarGz(origins, downloadInfo.sha256, downloadInfo.size, archiveFile, stagingDir, previous, keepJmods, progressListener);
+                }
+                break;
+            } catch (JavaArchiveExtractor.CorruptArchiveException e) {
+                try { JavaArchiveExtractor.deleteTree(stagingDir); } catch (IOException ignore) { }
+                try { Files.deleteIfExists(archiveFile); } catch (IOException ignore) { }
+                if (attempt >= MAX_EXTRACT_ATTEMPTS) {
+                    throw new IOException("Downloaded Java " + majorVersion + " archive is corrupt", e);
+                }
+                CleanroomRelauncher.LOGGER.warn("Archive verification failed for {} ({}). Retrying download...", archiveFile.getFileName(), e.getMessage());
+            } catch (IOException e) {
+                try { JavaArchiveExtractor.deleteTree(stagingDir); } catch (IOException ignore) { }
+                throw e;
+            }
+        }
+        normalizeExtractedRoot(stagingDir, majorVersion, downloadInfo.imageTypeUsed);
+        manifest.write(stagingDir);
+        if (manifest.reusedFiles() > 0) {
+            CleanroomRelauncher.LOGGER.info("Reused {} of {} files ({} MB) from the installed release", manifest.reusedFiles(),
+                    manifest.fileCount(), manifest.reusedBytes() / (1024 * 1024));
+        }
+        try {
+            JavaArchiveExtractor.promote(stagingDir, targetDir);
+        } catch (JavaArchiveExtractor.InUseException e) {
+            if (targetDir.getFileName().toString().endsWith(UPDATE_SUFFIX)) {
+                throw e;
+            }
+            // Another instance runs from the install this one replaces; it waits as a pending update meanwhile
+            targetDir = targetDir.resolveSibling(targetDir.getFileName() + UPDATE_SUFFIX);
+            CleanroomRelauncher.LOGGER.info("{}, installing into {} until it is free", e.getMessage(), targetDir.getFileName());
+            JavaArchiveExtractor.promote(stagingDir, targetDir);
         }
-        normalizeExtractedRoot(targetDir, majorVersion, downloadInfo.imageTypeUsed);
 
         try { Files.deleteIfExists(archiveFile); } catch (IOException ignore) { }
 
-        javaBin = findJavaBinary(targetDir);
+        Path javaBin = locateJavaBinary(targetDir, majorVersion, downloadInfo.imageTypeUsed);
         if (javaBin == null || !Files.isRegularFile(javaBin)) {
             String binaryName = os.equals("windows") ? "java.exe" : "java";
             throw new IOException("Downloaded Java " + majorVersion + " archive did not contain a valid " + binaryName);
         }
+        writeReceipt(targetDir, javaBin, vendorSlug, majorVersion, os, arch, downloadInfo.imageTypeUsed);
+        return javaBin;
+    }
+
+    /**
+     * Makes sure the Java a later launch is going to ask for is ready: installs it if missing, or downloads the
+     * vendor's newer patch release of an existing install next to it, to be swapped in by
+     * {@link #applyPendingUpdates} on a later launch, once no instance runs from the install. Meant for background
+     * use.
+     */
+    public static void prefetch(Path baseDir, int majorVersion, String vendor) throws IOException {
+        String osName = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        String os = osName.contains("win") ? "windows" : osName.contains("mac") ? "mac" : "linux";
+        String archiveExt = os.equals("windows") ? ".zip" : ".tar.gz";
+        String arch = detectArch();
+        String vendorSlug = vendor != null && vendor.equalsIgnoreCase("graalvm") ? "graalvm" : "temurin";
+        Path installDir = baseDir.resolve(String.format("%s-%d-%s-%s", vendorSlug, majorVersion, os, arch));
+        JavaInstallReceipt receipt = JavaInstallReceipt.read(installDir);
+        if (receipt == null) {
+            ensureJava(baseDir, majorVersion, vendor, null, os, archiveExt);
+            return;
+        }
+        if ("system".equals(receipt.imageType())) {
+            return; // Updating it is up to whoever installed it
+        }
+        DownloadInfo downloadInfo = resolveDownloadUrl(majorVersion, os, arch, vendor);
+        if (!downloadInfo.vendorUsed.equals(vendorSlug) || isSameRelease(downloadInfo.releaseName, receipt.version())) {
+            return;
+        }
+        Path updateDir = installDir.resolveSibling(installDir.getFileName() + UPDATE_SUFFIX);
+        JavaInstallReceipt pending = JavaInstallReceipt.read(updateDir);
+        if (pending != null && isSameRelease(downloadInfo.releaseName, pending.version())) {
+            return;
+        }
+        CleanroomRelauncher.LOGGER.info("Prefetching Java update {} -> {}", receipt.version(), downloadInfo.releaseName);
+        install(downloadInfo, updateDir, JavaFileManifest.read(installDir), majorVersion, os, arch, archiveExt, null);
+    }
+
+    /**
+     * Swaps in updates {@link #prefetch} finished on an earlier launch, and deletes what is left of installs
+     * replaced earlier. An update whose install another instance runs from, or that cannot be moved aside, stays
+     * pending. Cheap when there is nothing to do: one directory listing.
+     */
+    public static void applyPendingUpdates(Path baseDir) {
+        for (Path updateDir : JavaLocations.subdirectories(baseDir)) {
+            String name = updateDir.getFileName().toString();
+            if (name.endsWith(JavaArchiveExtractor.OLD_SUFFIX)) {
+                // Left behind by a replacement that could not delete all of it
+                JavaArchiveExtractor.deleteOld(updateDir);
+                continue;
+            }
+            if (!name.endsWith(UPDATE_SUFFIX)) continue;
+            Path installDir = updateDir.resolveSibling(name.substring(0, name.length() - UPDATE_SUFFIX.length()));
+            try {
+                JavaInstallReceipt update = JavaInstallReceipt.read(updateDir);
+                if (update == null) {
+                    // Unfinished or damaged; the next prefetch starts over
+                    JavaArchiveExtractor.deleteTree(updateDir);
+                    continue;
+                }
+                JavaArchiveExtractor.promote(updateDir, installDir);
+                CleanroomRelauncher.LOGGER.info("Updated {} to Java {}", installDir.getFileName(), update.version());
+            } catch (JavaArchiveExtractor.InUseException e) {
+                CleanroomRelauncher.LOGGER.info("Leaving the Java update in {} pending: {}", name, e.getMessage());
+            } catch (IOException e) {
+                CleanroomRelauncher.LOGGER.warn("Unable to apply the Java update in {}: {}", name, e.toString());
+            }
+        }
+    }
+
+    /**
+     * @return every file of the relauncher's own Java installs that has a file manifest, for the cache scrubber
+     */
+    public static List<CacheScrubber.Expected> installedFiles(Path baseDir) {
+        List<CacheScrubber.Expected> expected = new ArrayList<>();
+        for (Path installDir : JavaLocations.subdirectories(baseDir)) {
+            if (installDir.getFileName().toString().endsWith(JavaArchiveExtractor.OLD_SUFFIX)) continue;
+            JavaFileManifest manifest = JavaInstallReceipt.read(installDir) == null ? null : JavaFileManifest.read(installDir);
+            if (manifest != null) {
+                expected.addAll(manifest.expectations(installDir));
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * @param releaseName a vendor release name, e.g. "jdk-21.0.5+11"
+     * @param version     a runtime version, e.g. "21.0.5+11-LTS"
+     */
+    private static boolean isSameRelease(String releaseName, String version) {
+        if (releaseName == null || version == null) {
+            return true; // Nothing to compare; never download on a guess
+        }
+        String release = releaseName.replaceFirst("^jdk-?", "");
+        return version.startsWith(release) || release.startsWith(version);
+    }
+
+    /**
+     * Looks through the usual install locations for a Java of the wanted major version, vendor, OS and architecture,
+     * identified from its release file alone.
+     *
+     * @return the newest match, or null if there is none
+     */
+    private static JavaInstallReceipt findSystemJava(int majorVersion, String vendor, String os, String arch) {
+        String osName = os.equals("mac") ? "darwin" : os;
+        JavaInstallReceipt best = null;
+        for (Path executable : JavaLocations.systemExecutables()) {
+            JavaInstallReceipt candidate = JavaInstallReceipt.ofExecutable(executable);
+            if (candidate == null || candidate.majorVersion() != majorVersion
+                    || !vendor.equals(candidate.vendor()) || !arch.equals(candidate.arch())
+                    || (candidate.os() != null && !candidate.os().equals(osName))
+                    || !Files.isRegularFile(candidate.executable().getParent().resolveSibling("lib").resolve("modules"))) {
+                continue;
+            }
+            if (best == null || compareVersions(candidate.version(), best.version()) > 0) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static int compareVersions(String a, String b) {
+        String[] left = a.split("[^0-9]+");
+        String[] right = b.split("[^0-9]+");
+        for (int i = 0; i < Math.min(left.length, right.length); i++) {
+            if (left[i].isEmpty() || right[i].isEmpty()) continue;
+            int cmp = Long.compare(Long.parseLong(left[i]), Long.parseLong(right[i]));
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(left.length, right.length);
+    }
+
+    private static void writeReceipt(Path installDir, Path javaBin, String vendor, int majorVersion, String os, String arch, String imageType) {
+        try {
+            JavaInstallReceipt.write(installDir, javaBin, vendor, majorVersion, os, arch, imageType);
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to write the install receipt for {}: {}", installDir, e.toString());
+        }
+    }
+
+    /**
+     * When trimmed runtimes are enabled and {@code javaBin} belongs to a full JDK, returns the java binary of a
+     * jlink image built from it next to the install, linking it first if it is missing or from another build.
+     * Falls back to the full JDK if linking is not possible.
+     */
+    private static String linkedRuntimeOr(Path javaBin, Path installDir, String vendor, String os, String arch) {
+        Path jdkHome = javaBin.toAbsolutePath().getParent().getParent();
+        if (CleanroomRelauncher.CONFIG == null || !CleanroomRelauncher.CONFIG.isJlinkRuntime() || !JavaRuntimeLinker.canLink(jdkHome)) {
+            return javaBin.toAbsolutePath().toString();
+        }
+        Path runtimeDir = installDir.resolveSibling(installDir.getFileName() + "-runtime");
+        try {
+            Path runtimeBin = runtimeDir.resolve("bin").resolve(javaBin.getFileName().toString());
+            if (!JavaRuntimeLinker.isLinkedFrom(runtimeDir, jdkHome)) {
+                CleanroomRelauncher.LOGGER.info("Linking a trimmed runtime image from {}", jdkHome);
+                JavaRuntimeLinker.link(jdkHome, runtimeDir);
+            }
+            if (Files.isRegularFile(runtimeBin) && JavaInstallReceipt.read(runtimeDir) == null) {
+                JavaInstallReceipt.write(runtimeDir, runtimeBin, vendor, -1, os, arch, "runtime");
+            }
+            if (Files.isRegularFile(runtimeBin)) {
+                return runtimeBin.toAbsolutePath().toString();
+            }
+            CleanroomRelauncher.LOGGER.warn("Runtime image {} has no {}, using the full JDK", runtimeDir, javaBin.getFileName());
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to link a trimmed runtime image, using the full JDK: {}", e.toString());
+        }
         return javaBin.toAbsolutePath().toString();
     }
 
+    /**
+     * Downloads a tar.gz archive while a second thread extracts it, following the download's watermark of
+     * contiguous completed bytes. If the streaming pass fails for any reason the partially extracted tree is
+     * discarded and the finished archive is extracted again from disk.
+     *
+     * @return the manifest of the extracted tree
+     */
+    private static JavaFileManifest downloadAndExtractTarGz(List<String> origins, String sha256, long size, Path archiveFile, Path targetDir,
+                                                            JavaFileManifest previous, boolean keepJmods, ProgressListener progressListener) throws IOException {
+        Path partFile = archiveFile.resolveSibling(archiveFile.getFileName().toString() + ".part");
+        DownloadWatermark watermark = new DownloadWatermark(partFile, archiveFile);
+        ExecutorService extractor = Executors.newSingleThreadExecutor();
+        Future<JavaFileManifest> extraction = extractor.submit(() -> {
+            try (InputStream in = watermark.openStream()) {
+                return JavaArchiveExtractor.extractTarGz(in, targetDir, previous, keepJmods);
+            }
+        });
+        extractor.shutdown();
+
+        try {
+            downloadWithVerification(origins, archiveFile, progressListener, MAX_DOWNLOAD_RETRIES, watermark, sha256, size);
+        } catch (IOException e) {
+            watermark.abort(e);
+            extractor.shutdownNow();
+            throw e;
+        }
+        watermark.finish();
+
+        try {
+            JavaFileManifest manifest = extraction.get();
+            CleanroomRelauncher.LOGGER.info("Extracted {} while it was downloading", archiveFile.getFileName());
+            return manifest;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            extractor.shutdownNow();
+            throw new IOException("Interrupted while extracting " + archiveFile.getFileName(), e);
+        } catch (ExecutionException e) {
+            CleanroomRelauncher.LOGGER.warn("Streaming extraction of {} failed ({}), extracting from the downloaded archive instead",
+                    archiveFile.getFileName(), String.valueOf(e.getCause()));
+        }
+
+        JavaArchiveExtractor.deleteTree(targetDir);
+        Files.createDirectories(targetDir);
+        return JavaArchiveExtractor.extractTarGz(archiveFile, targetDir, previous, keepJmods);
+    }
+
     private static class DownloadInfo {
         final String downloadUrl;
         final String imageTypeUsed;
         final String vendorUsed;
+        final String sha256;
+        final long size;
+        final String releaseName;
+        // downloadUrl first, then equivalent origins serving the same archive
+        final List<String> origins;
         
-        DownloadInfo(String downloadUrl, String imageTypeUsed, String vendorUsed) {
+        DownloadInfo(String downloadUrl, String imageTypeUsed, String vendorUsed, String sha256, long size, String releaseName, List<String> origins) {
             this.downloadUrl = downloadUrl;
             this.imageTypeUsed = imageTypeUsed;
             this.vendorUsed = vendorUsed;
+            this.sha256 = sha256;
+            this.size = size;
+            this.releaseName = releaseName;
+            this.origins = origins;
+        }
+    }
+
+    private static class VendorPackage {
+        final String link;
+        final String name;
+        final String sha256;
+        final String releaseName;
+        final long size;
+
+        VendorPackage(String link, String name, String sha256, String releaseName, long size) {
+            this.link = link;
+            this.name = name;
+            this.sha256 = sha256;
+            this.releaseName = releaseName;
+            this.size = size;
         }
     }
 
     private static DownloadInfo resolveDownloadUrl(int majorVersion, String os, String arch, String vendor) throws IOException {
-        String downloadUrl = null;
+        boolean wantGraal = vendor != null && vendor.equalsIgnoreCase("graalvm");
+        String cacheKey = VendorResolutionCache.key(wantGraal ? "graalvm" : "temurin", majorVersion, os, arch);
+        VendorResolutionCache.Entry cached = resolutionCache().get(cacheKey);
+        if (cached != null) {
+            CleanroomRelauncher.LOGGER.info("Using cached resolution for Java {} {} ({}-{}): {}", majorVersion, cached.vendor, os, arch, cached.name);
+            VendorPackage pkg = new VendorPackage(cached.link, cached.name, cached.sha256, cached.releaseName, cached.size);
+            return new DownloadInfo(pkg.link, cached.imageType, cached.vendor, pkg.sha256, pkg.size, pkg.releaseName,
+                    collectOrigins(pkg, majorVersion, os, arch, cached.imageType, cached.vendor));
+        }
+
+        VendorPackage pkg = null;
         String imageTypeUsed = "jre";
         String vendorUsed = null;
         
-        if (vendor != null && vendor.equalsIgnoreCase("graalvm")) {
+        if (wantGraal) {
             try {
-                downloadUrl = fetchGraalVMDownloadLink(majorVersion, os, arch);
-                if (downloadUrl != null) {
+                pkg = fetchGraalVMPackage(majorVersion, os, arch);
+                if (pkg != null) {
                     imageTypeUsed = "jdk";
                     vendorUsed = "graalvm";
                 }
-            } catch (IOException e) {
+            } catch (IOException | RuntimeException e) {
                 CleanroomRelauncher.LOGGER.warn("Failed to resolve GraalVM JDK {} ({}, {}): {}", majorVersion, os, arch, e.toString());
             }
         }
         
-        if (downloadUrl == null) {
-            try {
-                downloadUrl = fetchAdoptiumDownloadLink(majorVersion, os, arch, "jre");
-                if (downloadUrl != null) {
-                    imageTypeUsed = "jre";
+        if (pkg == null) {
+            // Ask for the JRE and the JDK at once; the JDK answer is only used when there is no JRE build
+            CompletableFuture<VendorPackage> jre = CompletableFuture.supplyAsync(() -> fetchAdoptiumPackageQuietly(majorVersion, os, arch, "jre"));
+            CompletableFuture<VendorPackage> jdk = CompletableFuture.supplyAsync(() -> fetchAdoptiumPackageQuietly(majorVersion, os, arch, "jdk"));
+            pkg = jre.join();
+            if (pkg != null) {
+                imageTypeUsed = "jre";
+                vendorUsed = "temurin";
+            } else {
+                pkg = jdk.join();
+                if (pkg != null) {
+                    imageTypeUsed = "jdk";
                     vendorUsed = "temurin";
                 }
-            } catch (IOException e) {
-                CleanroomRelauncher.LOGGER.warn("Failed to resolve Temurin {} JRE via assets API ({}): {}", majorVersion, os, e.toString());
-            }
-            
-            if (downloadUrl == null) {
-                try {
-                    downloadUrl = fetchAdoptiumDownloadLink(majorVersion, os, arch, "jdk");
-                    if (downloadUrl != null) {
-                        imageTypeUsed = "jdk";
-                        vendorUsed = "temurin";
-                    }
-                } catch (IOException e) {
-                    CleanroomRelauncher.LOGGER.warn("Failed to resolve Temurin {} JDK via assets API ({}): {}", majorVersion, os, e.toString());
-                }
             }
         }
         
-        if (downloadUrl == null || vendorUsed == null) {
+        if (pkg == null || pkg.link == null || vendorUsed == null) {
             throw new IOException("Unable to resolve Java " + majorVersion + " download URL for " + os + " " + arch + " from vendor(s)");
         }
+
+        // A fallback to Temurin is not cached, so the preferred vendor is asked again next time
+        if (vendorUsed.equals(wantGraal ? "graalvm" : "temurin")) {
+            VendorResolutionCache.Entry entry = new VendorResolutionCache.Entry();
+            entry.vendor = vendorUsed;
+            entry.imageType = imageTypeUsed;
+            entry.link = pkg.link;
+            entry.name = pkg.name;
+            entry.sha256 = pkg.sha256;
+            entry.releaseName = pkg.releaseName;
+            entry.size = pkg.size;
+            resolutionCache().put(cacheKey, entry);
+        }
         
-        return new DownloadInfo(downloadUrl, imageTypeUsed, vendorUsed);
+        return new DownloadInfo(pkg.link, imageTypeUsed, vendorUsed, pkg.sha256, pkg.size, pkg.releaseName,
+                collectOrigins(pkg, majorVersion, os, arch, imageTypeUsed, vendorUsed));
+    }
+
+    private static synchronized VendorResolutionCache resolutionCache() {
+        if (resolutionCache == null) {
+            resolutionCache = VendorResolutionCache.load(CleanroomRelauncher.CACHE_DIR.resolve("java").resolve("resolved-packages.json"));
+        }
+        return resolutionCache;
+    }
+
+    private static VendorPackage fetchAdoptiumPackageQuietly(int majorVersion, String os, String arch, String imageType) {
+        try {
+            return fetchAdoptiumPackage(majorVersion, os, arch, imageType);
+        } catch (IOException | RuntimeException e) {
+            CleanroomRelauncher.LOGGER.warn("Failed to resolve Temurin {} {} via assets API ({}): {}", majorVersion,
+                    imageType.toUpperCase(Locale.ROOT), os, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Lists every origin expected to serve the same archive: the vendor link, Adoptium's own binary endpoint for
+     * Temurin, and the mirrors configured in {@code javaDownloadMirrors}. Origins that turn out not to serve a
+     * file of the right size, or to serve the vendor link's own asset, are dropped when the download starts.
+     */
+    private static List<String> collectOrigins(VendorPackage pkg, int majorVersion, String os, String arch, String imageType, String vendorUsed) {
+        Set<String> origins = new LinkedHashSet<>();
+        origins.add(pkg.link);
+        if (vendorUsed.equals("temurin") && pkg.releaseName != null) {
+            origins.add(String.format(Locale.ROOT, ADOPTIUM_BINARY_API + "version/%s/%s/%s/%s/hotspot/normal/eclipse",
+                    urlEncode(pkg.releaseName), os, arch, imageType));
+        }
+        if (pkg.name != null && CleanroomRelauncher.CONFIG != null) {
+            for (String template : CleanroomRelauncher.CONFIG.getJavaDownloadMirrors()) {
+                if (template == null || template.trim().isEmpty()) continue;
+                origins.add(template.trim()
+                        .replace("{vendor}", vendorUsed)
+                        .replace("{major}", String.valueOf(majorVersion))
+                        .replace("{os}", os)
+                        .replace("{arch}", arch)
+                        .replace("{image}", imageType)
+                        .replace("{release}", pkg.releaseName == null ? "" : urlEncode(pkg.releaseName))
+                        .replace("{name}", pkg.name));
+            }
+        }
+        return new ArrayList<>(origins);
+    }
+
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Looks where {@link #normalizeExtractedRoot} puts the executable before falling back to searching the tree.
+     */
+    private static Path locateJavaBinary(Path targetDir, int majorVersion, String imageType) throws IOException {
+        String root = imageType != null && imageType.equalsIgnoreCase("jre")
+                ? String.format("jdk-%d-jre", majorVersion)
+                : String.format("jdk-%d", majorVersion);
+        for (String home : new String[] { root, root + "/Contents/Home" }) {
+            Path bin = targetDir.resolve(home).resolve("bin");
+            for (String name : new String[] { "java", "java.exe" }) {
+                if (Files.isRegularFile(bin.resolve(name))) {
+                    return bin.resolve(name);
+                }
+            }
+        }
+        return findJavaBinary(targetDir);
     }
 
     private static Path findJavaBinary(Path root) throws IOException {
@@ -217,68 +648,7 @@ public final class JavaDownloader {
         }
     }
 
-    private static void extractZip(Path zipFile, Path targetDir) throws IOException {
-        try (InputStream fis = Files.newInputStream(zipFile);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             ZipInputStream zis = new ZipInputStream(bis)) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                Path outPath = targetDir.resolve(entry.getName()).normalize();
-                if (!outPath.startsWith(targetDir)) {
-                    throw new IOException("Zip entry outside target dir: " + entry.getName());
-                }
-                if (entry.isDirectory()) {
-                    Files.createDirectories(outPath);
-                } else {
-                    Files.createDirectories(outPath.getParent());
-                    try (OutputStream os = Files.newOutputStream(outPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                        byte[] buffer = new byte[8192];
-                        int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            os.write(buffer, 0, len);
-                        }
-                    }
-                }
-                zis.closeEntry();
-            }
-        }
-    }
-
-    private static void extractTarGz(Path tarGzFile, Path targetDir) throws IOException {
-        try (InputStream fis = Files.newInputStream(tarGzFile);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             GzipCompressorInputStream gis = new GzipCompressorInputStream(bis);
-             TarArchiveInputStream tis = new TarArchiveInputStream(gis)) {
-            TarArchiveEntry entry;
-            while ((entry = tis.getNextTarEntry()) != null) {
-                Path outPath = targetDir.resolve(entry.getName()).normalize();
-                if (!outPath.startsWith(targetDir)) {
-                    throw new IOException("Tar entry outside target dir: " + entry.getName());
-                }
-                if (entry.isDirectory()) {
-                    Files.createDirectories(outPath);
-                } else {
-                    Files.createDirectories(outPath.getParent());
-                    try (OutputStream os = Files.newOutputStream(outPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                        byte[] buffer = new byte[8192];
-                        int len;
-                        while ((len = tis.read(buffer)) > 0) {
-                            os.write(buffer, 0, len);
-                        }
-                    }
-                    // Try to preserve executable bit for binaries
-                    try {
-                        Set<PosixFilePermission> perms = PosixFilePermissions.fromString("rwxr-xr-x");
-                        if (Files.getFileStore(outPath).supportsFileAttributeView("posix")) {
-                            Files.setPosixFilePermissions(outPath, perms);
-                        }
-                    } catch (Throwable ignored) { }
-                }
-            }
-        }
-    }
-
-    private static String fetchAdoptiumDownloadLink(int majorVersion, String os, String arch, String imageType) throws IOException {
+    private static VendorPackage fetchAdoptiumPackage(int majorVersion, String os, String arch, String imageType) throws IOException {
         String api = String.format(
                 Locale.ROOT,
                 "https://api.adoptium.net/v3/assets/latest/%d/hotspot?architecture=%s&heap_size=normal&image_type=%s&os=%s&vendor=eclipse",
@@ -295,59 +665,57 @@ public final class JavaDownloader {
         if (code != 200) {
             throw new IOException("Unexpected HTTP status " + code + " from assets API: " + api);
         }
-        try (InputStream in = conn.getInputStream(); InputStreamReader reader = new InputStreamReader(in)) {
-            JsonElement root = new JsonParser().parse(reader);
-            if (!root.isJsonArray()) return null;
-            JsonArray arr = root.getAsJsonArray();
-            if (arr.size() == 0) return null;
-            // Try to find a ZIP asset
-            String zipLink = null;
-            for (JsonElement el : arr) {
+        // Read the array one asset at a time and stop at the first archive
+        try (JsonReader reader = new JsonReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) return null;
+            reader.beginArray();
+            JsonParser parser = new JsonParser();
+            VendorPackage first = null;
+            while (reader.hasNext()) {
+                JsonElement el = parser.parse(reader);
                 if (!el.isJsonObject()) continue;
                 JsonObject obj = el.getAsJsonObject();
-                JsonObject pkg = null;
-                if (obj.has("binary")) {
-                    JsonObject binary = obj.getAsJsonObject("binary");
-                    if (binary != null && binary.has("package")) {
-                        pkg = binary.getAsJsonObject("package");
-                    }
-                }
-                if (pkg == null && obj.has("package")) {
-                    pkg = obj.getAsJsonObject("package");
-                }
+                JsonObject pkg = adoptiumPackageOf(obj);
                 if (pkg == null) continue;
                 String link = pkg.has("link") ? pkg.get("link").getAsString() : null;
                 String name = pkg.has("name") ? pkg.get("name").getAsString() : null;
+                // Try to find a ZIP asset
                 if ((name != null && (name.toLowerCase(Locale.ROOT).endsWith(".zip") || name.toLowerCase(Locale.ROOT).endsWith(".tar.gz"))) ||
                         (link != null && (link.toLowerCase(Locale.ROOT).endsWith(".zip") || link.toLowerCase(Locale.ROOT).endsWith(".tar.gz")))) {
-                    zipLink = link;
-                    break;
+                    return toVendorPackage(obj, pkg);
                 }
-            }
-            if (zipLink != null) return zipLink;
-
-            // Fallback to the first available link if no explicit ZIP found
-            JsonObject first = arr.get(0).getAsJsonObject();
-            if (first.has("binary")) {
-                JsonObject binary = first.getAsJsonObject("binary");
-                if (binary != null && binary.has("package")) {
-                    JsonObject pkg = binary.getAsJsonObject("package");
-                    if (pkg != null && pkg.has("link")) {
-                        return pkg.get("link").getAsString();
-                    }
+                if (first == null && link != null) {
+                    first = toVendorPackage(obj, pkg);
                 }
             }
-            if (first.has("package")) {
-                JsonObject pkg = first.getAsJsonObject("package");
-                if (pkg != null && pkg.has("link")) {
-                    return pkg.get("link").getAsString();
-                }
+            // Fallback to the first available link if no explicit ZIP found
+            return first;
+        }
+    }
+
+    private static JsonObject adoptiumPackageOf(JsonObject asset) {
+        if (asset.has("binary")) {
+            JsonObject binary = asset.getAsJsonObject("binary");
+            if (binary != null && binary.has("package")) {
+                return binary.getAsJsonObject("package");
             }
-            return null;
         }
+        if (asset.has("package")) {
+            return asset.getAsJsonObject("package");
+        }
+        return null;
     }
 
-    private static String fetchGraalVMDownloadLink(int majorVersion, String os, String arch) throws IOException {
+    private static VendorPackage toVendorPackage(JsonObject asset, JsonObject pkg) {
+        String link = pkg.get("link").getAsString();
+        String name = pkg.has("name") ? pkg.get("name").getAsString() : link.substring(link.lastIndexOf('/') + 1);
+        String sha256 = pkg.has("checksum") && !pkg.get("checksum").isJsonNull() ? pkg.get("checksum").getAsString() : null;
+        String releaseName = asset.has("release_name") ? asset.get("release_name").getAsString() : null;
+        long size = pkg.has("size") ? pkg.get("size").getAsLong() : -1L;
+        return new VendorPackage(link, name, sha256, releaseName, size);
+    }
+
+    private static VendorPackage fetchGraalVMPackage(int majorVersion, String os, String arch) throws IOException {
         String api = "https://api.github.com/repos/graalvm/graalvm-ce-builds/releases?per_page=100";
         URL url = new URL(api);
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
@@ -363,20 +731,36 @@ public final class JavaDownloader {
         String graalOs = os.equals("mac") ? "macos" : os; // windows, linux, macos
         String ext = os.equals("windows") ? ".zip" : ".tar.gz";
         String archKey = arch; // x64 or aarch64
-        try (InputStream in = conn.getInputStream(); InputStreamReader reader = new InputStreamReader(in)) {
-            JsonElement root = new JsonParser().parse(reader);
-            if (!root.isJsonArray()) return null;
-            JsonArray arr = root.getAsJsonArray();
-            for (JsonElement el : arr) {
-                if (!el.isJsonObject()) continue;
-                JsonObject rel = el.getAsJsonObject();
-                if (!rel.has("tag_name")) continue;
-                String tag = rel.get("tag_name").getAsString();
-                if (tag == null) continue;
-                // Tags are like: jdk-21.0.4+8, jdk-21.0.3+7, etc.
-                if (!tag.startsWith("jdk-" + majorVersion + ".") && !tag.equals("jdk-" + majorVersion)) continue;
-                if (!rel.has("assets")) continue;
-                JsonArray assets = rel.getAsJsonArray("assets");
+        String tagPrefix = "jdk-" + majorVersion;
+        // The releases document runs to megabytes; stream it, skip the assets of releases for other versions and
+        // stop at the first match (releases are listed newest first)
+        try (JsonReader reader = new JsonReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) return null;
+            reader.beginArray();
+            JsonParser parser = new JsonParser();
+            while (reader.hasNext()) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                String tag = null;
+                JsonArray assets = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if (field.equals("tag_name") && reader.peek() == JsonToken.STRING) {
+                        tag = reader.nextString();
+                    } else if (field.equals("assets") && reader.peek() == JsonToken.BEGIN_ARRAY
+                            // Tags are like: jdk-21.0.4+8, jdk-21.0.3+7, etc.
+                            && (tag == null || tag.startsWith(tagPrefix + ".") || tag.equals(tagPrefix))) {
+                        assets = parser.parse(reader).getAsJsonArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (tag == null || assets == null) continue;
+                if (!tag.startsWith(tagPrefix + ".") && !tag.equals(tagPrefix)) continue;
                 for (JsonElement ae : assets) {
                     if (!ae.isJsonObject()) continue;
                     JsonObject asset = ae.getAsJsonObject();
@@ -387,7 +771,8 @@ public final class JavaDownloader {
                     //          graalvm-community-jdk-21.0.4_macos-aarch64_bin.tar.gz
                     String probe = "_" + graalOs + "-" + archKey + "_";
                     if (name.startsWith("graalvm-community-jdk-") && name.contains(probe) && name.endsWith(ext)) {
-                        return dl;
+                        long size = asset.has("size") ? asset.get("size").getAsLong() : -1L;
+                        return new VendorPackage(dl, name, fetchGraalVMChecksum(assets, name + ".sha256"), tag, size);
                     }
                 }
             }
@@ -395,75 +780,233 @@ public final class JavaDownloader {
         }
     }
 
-    private static void downloadWithVerification(String urlStr, Path dest, ProgressListener listener, int maxRetries) throws IOException {
+    /**
+     * @param origins equivalent URLs for the archive, primary first; ranges are spread over every origin that
+     *                serves a file of the same size
+     * @param sha256  the vendor's checksum of the archive, or null if it publishes none
+     * @param knownSize the archive size reported by the vendor API, or -1 if unknown
+     */
+    private static void downloadWithVerification(List<String> origins, Path dest, ProgressListener listener, int maxRetries,
+                                                 DownloadWatermark watermark, String sha256, long knownSize) throws IOException {
+        String urlStr = origins.get(0);
+        // The checksum is computed by following the download's watermark, the same way the tar extractor reads it,
+        // so only the last few megabytes are left to hash once the download completes
+        DownloadWatermark progress = watermark;
+        if (progress == null && sha256 != null) {
+            progress = new DownloadWatermark(dest.resolveSibling(dest.getFileName().toString() + ".part"), dest);
+        }
+        ExecutorService hasher = null;
+        Future<String> digest = null;
+        if (sha256 != null) {
+            hasher = Executors.newSingleThreadExecutor();
+            digest = hasher.submit(sha256Of(progress));
+            hasher.shutdown();
+        }
         IOException last = null;
-        for (int attempt = 0; attempt <= maxRetries; attempt++) {
-            try {
-                String finalUrl = resolveFinalURL(urlStr);
-                ProbeInfo info = probeServer(finalUrl);
-                boolean canMulti = info.totalBytes > 0 && info.acceptRanges && testRangeSupport(finalUrl);
-                if (canMulti) {
-                    if (listener != null) listener.onStart(info.totalBytes);
-                    downloadMultiChunk(finalUrl, dest, info.totalBytes, listener);
-                } else {
-                    // Fallback to single-stream with resume
-                    downloadFollowingRedirectsWithUA(finalUrl, dest, listener);
-                }
-                // Verify archive integrity; if fails, delete and retry
-                if (!CacheVerification.verifyJavaArchive(dest)) {
-                    CleanroomRelauncher.LOGGER.warn("Archive verification failed for {}. Retrying download...", dest.getFileName().toString());
-                    try { Files.deleteIfExists(dest); } catch (IOException ignore) {}
-                    last = new IOException("Archive verification failed");
-                    continue;
-                }
-                return; // success
-            } catch (IOException e) {
-                last = e;
-                if (attempt == maxRetries) break;
-                long backoff = (long) (2000L * Math.pow(2, attempt));
-                long jitter = (long) (backoff * 0.2 * Math.random());
-                long sleep = backoff + jitter;
-                if (listener != null) {
-                    long remaining = sleep;
-                    while (remaining > 0) {
-                        try { listener.onRetryScheduled(attempt + 1, maxRetries + 1, remaining); } catch (Throwable ignored) {}
-                        long tick = Math.min(1000L, remaining);
-                        try { Thread.sleep(tick); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
-                        remaining -= tick;
+        try {
+            for (int attempt = 0; attempt <= maxRetries; attempt++) {
+                boolean fromCache = false;
+                try {
+                    ProbeInfo info = null;
+                    Boolean cachedRanges = knownSize > 0 ? hostCapabilities().acceptsRanges(urlStr) : null;
+                    if (cachedRanges != null) {
+                        // Size from the vendor API plus a known host: no round trips before the download starts;
+                        // chunk workers follow the redirect themselves and adopt the final URL
+                        info = new ProbeInfo(knownSize, cachedRanges, urlStr);
+                        fromCache = true;
+                    } else {
+                        info = probe(urlStr);
+                        hostCapabilities().record(urlStr, info.acceptRanges);
+                    }
+                    if (info.totalBytes > 0 && info.acceptRanges) {
+                        List<String> sources = new ArrayList<>();
+                        sources.add(info.finalUrl);
+                        sources.addAll(probeMirrors(origins.subList(1, origins.size()), info.totalBytes, info.finalUrl));
+                        if (listener != null) listener.onStart(info.totalBytes);
+                        downloadMultiChunk(sources, dest, info.totalBytes, listener, progress);
+                    } else {
+                        // Fallback to single-stream with resume
+                        downloadFollowingRedirectsWithUA(info.finalUrl, dest, listener, progress);
+                    }
+                    // Archive integrity is checked by the extractor as it unpacks; the vendor checksum covers the whole file
+                    if (sha256 != null) {
+                        progress.finish();
+                        verifySha256(digest, dest, sha256);
+                    }
+                    return; // success
+                } catch (JavaArchiveExtractor.CorruptArchiveException e) {
+                    throw e;
+                } catch (IOException e) {
+                    last = e;
+                    if (fromCache) {
+                        // Whatever we remembered about the host may be stale; probe it properly next time
+                        hostCapabilities().forget(urlStr);
+                    }
+                    if (attempt == maxRetries || DownloadThrottle.isCancelled()) break;
+                    long backoff = (long) (2000L * Math.pow(2, attempt));
+                    long jitter = (long) (backoff * 0.2 * Math.random());
+                    long sleep = backoff + jitter;
+                    if (listener != null) {
+                        long remaining = sleep;
+                        while (remaining > 0) {
+                            try { listener.onRetryScheduled(attempt + 1, maxRetries + 1, remaining); } catch (Throwable ignored) {}
+                            long tick = Math.min(1000L, remaining);
+                            try { Thread.sleep(tick); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+                            remaining -= tick;
+                        }
+                    } else {
+                        try { Thread.sleep(sleep); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
                     }
-                } else {
-                    try { Thread.sleep(sleep); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
                 }
             }
+        } finally {
+            if (hasher != null) {
+                if (progress != watermark) {
+                    progress.abort(new IOException("Download of " + dest.getFileName() + " ended"));
+                }
+                hasher.shutdownNow();
+            }
         }
         throw last != null ? last : new IOException("Download failed after verification retries: " + urlStr);
     }
 
+    private static Callable<String> sha256Of(DownloadWatermark watermark) {
+        return () -> {
+            MessageDigest md = DigestUtils.getSha256Digest();
+            byte[] buf = new byte[64 * 1024];
+            try (InputStream in = watermark.openStream()) {
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    md.update(buf, 0, n);
+                }
+            }
+            return Hex.encodeHexString(md.digest());
+        };
+    }
+
+    /**
+     * Compares the streamed checksum with the vendor's. If the streaming pass did not survive the download (a
+     * restart from byte zero invalidates it), the finished archive is hashed from disk instead.
+     */
+    private static void verifySha256(Future<String> digest, Path file, String expected) throws IOException {
+        long started = System.nanoTime();
+        String actual;
+        try {
+            actual = digest.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying " + file.getFileName(), e);
+        } catch (ExecutionException e) {
+            CleanroomRelauncher.LOGGER.warn("Streaming checksum of {} failed ({}), hashing the downloaded archive instead",
+                    file.getFileName(), String.valueOf(e.getCause()));
+            try (InputStream in = Files.newInputStream(file)) {
+                actual = DigestUtils.sha256Hex(in);
+            }
+        }
+        if (!actual.equalsIgnoreCase(expected.trim())) {
+            throw new JavaArchiveExtractor.CorruptArchiveException("SHA-256 mismatch for " + file.getFileName() + ": expected " + expected + ", got " + actual);
+        }
+        CleanroomRelauncher.LOGGER.info("Verified SHA-256 of {} ({} ms after the download completed)", file.getFileName(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Checks the extra origins with one ranged GET each, following redirects. An origin is kept only if it
+     * answers with a partial response for a file of exactly {@code totalBytes} and does not lead back to the asset
+     * the primary serves: redirects to storage hand out a differently signed URL each time, so URLs are compared by
+     * host and path. Adoptium's endpoint is dropped as soon as it passes through the primary's host, as it then
+     * serves the same asset from the same storage and splitting across it gains nothing.
+     *
+     * @return the final URLs of the usable origins, one per asset and none leading to {@code primaryUrl}'s
+     */
+    private static List<String> probeMirrors(List<String> mirrors, long totalBytes, String primaryUrl) {
+        if (mirrors.isEmpty()) return Collections.emptyList();
+        String primaryAsset = assetOf(primaryUrl);
+        String primaryHost = hostOf(primaryUrl);
+        Map<String, String> byAsset = new LinkedHashMap<>();
+        mirrors.parallelStream()
+                .map(mirror -> {
+                    try {
+                        List<String> hops = new ArrayList<>();
+                        ProbeInfo info = probe(mirror, hops);
+                        if (!info.acceptRanges || info.totalBytes != totalBytes) return null;
+                        for (String hop : hops) {
+                            if (assetOf(hop).equals(primaryAsset)
+                                    || (mirror.startsWith(ADOPTIUM_BINARY_API) && hostOf(hop).equals(primaryHost))) {
+                                CleanroomRelauncher.LOGGER.debug("Skipping download mirror {}: it leads to the primary origin's asset", mirror);
+                                return null;
+                            }
+                        }
+                        return info.finalUrl;
+                    } catch (IOException | RuntimeException e) {
+                        CleanroomRelauncher.LOGGER.debug("Skipping download mirror {}: {}", mirror, e.toString());
+                        return null;
+                    }
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())
+                .forEach(url -> byAsset.putIfAbsent(assetOf(url), url));
+        List<String> usable = new ArrayList<>(byAsset.values());
+        if (!usable.isEmpty()) {
+            CleanroomRelauncher.LOGGER.info("Splitting download across {} additional origin(s): {}", usable.size(), usable);
+        }
+        return usable;
+    }
+
+    private static synchronized HostCapabilityCache hostCapabilities() {
+        if (hostCapabilities == null) {
+            hostCapabilities = HostCapabilityCache.load(CleanroomRelauncher.CACHE_DIR.resolve("java").resolve("host-capabilities.json"));
+        }
+        return hostCapabilities;
+    }
+
     private static class ProbeInfo {
         final long totalBytes; final boolean acceptRanges; final String finalUrl;
         ProbeInfo(long t, boolean a, String u) { totalBytes = t; acceptRanges = a; finalUrl = u; }
     }
 
-    private static String resolveFinalURL(String urlStr) throws IOException {
+    /**
+     * Learns everything needed to plan a download from a single ranged GET: redirects are followed by hand so
+     * the final URL is known, a 206 answer proves range support and carries the total size in its
+     * {@code Content-Range}, and a plain 200 means the server ignores ranges.
+     */
+    private static ProbeInfo probe(String urlStr) throws IOException {
+        return probe(urlStr, null);
+    }
+
+    /**
+     * @param hops receives every URL visited on the way, {@code urlStr} and the final one included; may be null
+     */
+    private static ProbeInfo probe(String urlStr, List<String> hops) throws IOException {
         String current = urlStr;
         for (int i = 0; i < REDIRECT_LIMIT; i++) {
+            if (hops != null) hops.add(current);
             HttpURLConnection conn = null;
             try {
-                URL url = new URL(current);
-                conn = (HttpURLConnection) url.openConnection();
+                conn = (HttpURLConnection) new URL(current).openConnection();
                 conn.setInstanceFollowRedirects(false);
-                conn.setRequestMethod("HEAD");
-                conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-                conn.setReadTimeout(CONNECT_TIMEOUT_MS);
+                conn.setRequestMethod("GET");
+                conn.setConnectTimeout(TEST_RANGE_TIMEOUT_MS);
+                conn.setReadTimeout(TEST_RANGE_TIMEOUT_MS);
                 conn.setRequestProperty("User-Agent", USER_AGENT);
+                conn.setRequestProperty("Accept", "application/octet-stream");
+                conn.setRequestProperty("Range", "bytes=0-0");
                 int code = conn.getResponseCode();
                 if (code >= 300 && code < 400) {
                     String location = conn.getHeaderField("Location");
                     if (location == null) throw new IOException("Redirect without Location header from " + current);
-                    current = location;
+                    current = new URL(new URL(current), location).toString();
                     continue;
                 }
-                return current;
+                if (code == 206) {
+                    return new ProbeInfo(totalFromContentRange(conn.getHeaderField("Content-Range")), true, current);
+                }
+                if (code == 200) {
+                    long total = -1L;
+                    try { total = Long.parseLong(conn.getHeaderField("Content-Length")); } catch (Exception ignore) { total = -1L; }
+                    return new ProbeInfo(total, false, current);
+                }
+                throw new IOException("Unexpected HTTP status " + code + " from " + current);
             } finally {
                 if (conn != null) conn.disconnect();
             }
@@ -471,52 +1014,68 @@ public final class JavaDownloader {
         throw new IOException("Too many redirects while resolving: " + urlStr);
     }
 
-    private static ProbeInfo probeServer(String urlStr) throws IOException {
-        HttpURLConnection conn = null;
+    /**
+     * @return the lower-cased host and the path of {@code url}, without the query that signs it
+     */
+    private static String assetOf(String url) {
         try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("HEAD");
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-            conn.setReadTimeout(CONNECT_TIMEOUT_MS);
-            conn.setRequestProperty("User-Agent", USER_AGENT);
-            int code = conn.getResponseCode();
-            if (code >= 300 && code < 400) {
-                String fin = resolveFinalURL(urlStr);
-                return probeServer(fin);
-            }
-            long total = -1L;
-            try { total = Long.parseLong(conn.getHeaderField("Content-Length")); } catch (Exception ignore) { total = -1L; }
-            boolean ranges = false;
-            String ar = conn.getHeaderField("Accept-Ranges");
-            if (ar != null && ar.toLowerCase(Locale.ROOT).contains("bytes")) ranges = true;
-            return new ProbeInfo(total, ranges, urlStr);
-        } finally {
-            if (conn != null) conn.disconnect();
+            URL parsed = new URL(url);
+            return parsed.getHost().toLowerCase(Locale.ROOT) + parsed.getPath();
+        } catch (MalformedURLException e) {
+            return url;
         }
     }
 
-    private static boolean testRangeSupport(String urlStr) {
-        HttpURLConnection conn = null;
+    private static String hostOf(String url) {
         try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(TEST_RANGE_TIMEOUT_MS);
-            conn.setReadTimeout(TEST_RANGE_TIMEOUT_MS);
-            conn.setRequestProperty("User-Agent", USER_AGENT);
-            conn.setRequestProperty("Accept", "application/octet-stream");
-            conn.setRequestProperty("Range", "bytes=0-0");
-            int code = conn.getResponseCode();
-            return code == 206;
-        } catch (IOException ignored) {
-            return false;
-        } finally {
-            if (conn != null) conn.disconnect();
+            return new URL(url).getHost().toLowerCase(Locale.ROOT);
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    private static long totalFromContentRange(String contentRange) {
+        int slash = contentRange == null ? -1 : contentRange.indexOf('/');
+        if (slash < 0) return -1L;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1L;
         }
     }
 
-    private static void downloadFollowingRedirectsWithUA(String urlStr, Path dest, ProgressListener listener) throws IOException {
+    /**
+     * GraalVM publishes a {@code <archive>.sha256} asset next to each archive, holding the hex digest.
+     */
+    private static String fetchGraalVMChecksum(JsonArray assets, String checksumName) {
+        for (JsonElement ae : assets) {
+            if (!ae.isJsonObject()) continue;
+            JsonObject asset = ae.getAsJsonObject();
+            if (!asset.has("name") || !checksumName.equals(asset.get("name").getAsString()) || !asset.has("browser_download_url")) continue;
+            HttpURLConnection conn = null;
+            try {
+                conn = (HttpURLConnection) new URL(asset.get("browser_download_url").getAsString()).openConnection();
+                conn.setRequestMethod("GET");
+                conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                conn.setReadTimeout(READ_TIMEOUT_MS);
+                conn.setRequestProperty("User-Agent", USER_AGENT);
+                if (conn.getResponseCode() != 200) return null;
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.US_ASCII))) {
+                    String line = reader.readLine();
+                    String hex = line == null ? "" : line.trim().split("\\s+")[0];
+                    return hex.matches("[0-9a-fA-F]{64}") ? hex : null;
+                }
+            } catch (IOException e) {
+                CleanroomRelauncher.LOGGER.warn("Unable to fetch GraalVM checksum {}: {}", checksumName, e.toString());
+                return null;
+            } finally {
+                if (conn != null) conn.disconnect();
+            }
+        }
+        return null;
+    }
+
+    private static void downloadFollowingRedirectsWithUA(String urlStr, Path dest, ProgressListener listener, DownloadWatermark watermark) throws IOException {
         String current = urlStr;
         Path temp = dest.resolveSibling(dest.getFileName().toString() + ".part");
         if (!Files.exists(temp)) {
@@ -565,7 +1124,9 @@ public final class JavaDownloader {
                     } else {
                         try { total = Long.parseLong(conn.getHeaderField("Content-Length")); } catch (Exception ignore) { total = -1L; }
                         existing = 0L;
+                        if (watermark != null) watermark.restart();
                     }
+                    if (watermark != null) watermark.advance(existing);
                     if (listener != null) listener.onStart(total);
                     try (InputStream in = new BufferedInputStream(conn.getInputStream());
                          OutputStream out = Files.newOutputStream(temp, StandardOpenOption.CREATE, existing > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
@@ -575,6 +1136,8 @@ public final class JavaDownloader {
                         while ((n = in.read(buf)) >= 0) {
                             out.write(buf, 0, n);
                             downloaded += n;
+                            DownloadThrottle.acquire(n);
+                            if (watermark != null) watermark.advance(downloaded);
                             if (listener != null) listener.onProgress(downloaded, total);
                         }
                     }
@@ -595,213 +1158,289 @@ public final class JavaDownloader {
     }
 
     // Multi-chunk download with post-download verification and automatic retry.
-    private static void downloadMultiChunk(String urlStr, Path dest, long totalBytes, ProgressListener listener) throws IOException {
+    private static void downloadMultiChunk(List<String> origins, Path dest, long totalBytes, ProgressListener listener, DownloadWatermark watermark) throws IOException {
         int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
-        int threads = Math.min(8, cores * 2);
+        // Every origin gets at least one connection
+        int threads = Math.max(Math.min(8, cores * 2), Math.min(8, origins.size()));
         int totalChunks = (int) ((totalBytes + CHUNK_SIZE - 1) / CHUNK_SIZE);
 
         Path temp = dest.resolveSibling(dest.getFileName().toString() + ".part");
-        Path metaFile = dest.resolveSibling(dest.getFileName().toString() + ".part.meta");
+        Path journalFile = dest.resolveSibling(dest.getFileName().toString() + ".part.journal");
+        Path legacyMetaFile = dest.resolveSibling(dest.getFileName().toString() + ".part.meta");
         Files.createDirectories(dest.getParent());
 
-        BitSet completedChunks = new BitSet(totalChunks);
-        long alreadyDownloaded = 0L;
+        // The old properties-based metadata carried no checksums, so its chunks cannot be trusted
+        try { Files.deleteIfExists(legacyMetaFile); } catch (IOException ignore) {}
+        // A journal without its .part file was left by a finished download that could not delete it
+        if (!Files.exists(temp)) {
+            try { Files.deleteIfExists(journalFile); } catch (IOException ignore) {}
+        }
 
-        if (Files.exists(temp) && Files.exists(metaFile)) {
-            try {
-                Properties meta = new Properties();
-                try (InputStream mis = Files.newInputStream(metaFile)) {
-                    meta.load(mis);
-                }
-                long savedTotal = Long.parseLong(meta.getProperty("totalBytes", "0"));
-                int savedChunks = Integer.parseInt(meta.getProperty("totalChunks", "0"));
-                if (savedTotal == totalBytes && savedChunks == totalChunks) {
-                    String chunksHex = meta.getProperty("completedChunks", "");
-                    if (!chunksHex.isEmpty()) {
-                        byte[] chunkBytes = hexToBytes(chunksHex);
-                        completedChunks = BitSet.valueOf(chunkBytes);
-                        for (int i = 0; i < totalChunks; i++) {
-                            if (completedChunks.get(i)) {
-                                long start = (long) i * CHUNK_SIZE;
-                                long end = Math.min(totalBytes - 1, (i + 1) * CHUNK_SIZE - 1);
-                                alreadyDownloaded += (end - start + 1);
-                            }
-                        }
-                        CleanroomRelauncher.LOGGER.info("Resuming multi-chunk download: {} of {} chunks completed, {} bytes already downloaded",
-                                completedChunks.cardinality(), totalChunks, alreadyDownloaded);
-                    }
-                } else {
-                    CleanroomRelauncher.LOGGER.warn("Metadata mismatch for {}. Starting fresh download.", dest.getFileName().toString());
-                    completedChunks.clear();
-                    alreadyDownloaded = 0L;
+        // Closed on every way out, including a failed final move, so the mapping and channel are never left open
+        try (ChunkJournal journal = ChunkJournal.open(journalFile, totalBytes, CHUNK_SIZE)) {
+            long alreadyDownloaded = 0L;
+            if (journal.completedCount() > 0) {
+                alreadyDownloaded = journal.verifyAgainst(temp);
+                CleanroomRelauncher.LOGGER.info("Resuming multi-chunk download: {} of {} chunks completed, {} bytes already downloaded",
+                        journal.completedCount(), totalChunks, alreadyDownloaded);
+            }
+
+            if (watermark != null) {
+                if (journal.completedCount() == 0) {
+                    watermark.restart();
                 }
-            } catch (Exception e) {
-                CleanroomRelauncher.LOGGER.warn("Failed to read download metadata: {}. Starting fresh.", e.toString());
-                completedChunks.clear();
-                alreadyDownloaded = 0L;
+                watermark.advance(journal.contiguousBytes());
             }
-        }
 
-        if (!Files.exists(temp)) {
+            // One preallocated file and channel shared by every chunk worker; positional writes need no locking
             try (RandomAccessFile raf = new RandomAccessFile(temp.toFile(), "rw")) {
-                raf.setLength(totalBytes);
+                if (raf.length() != totalBytes) {
+                    raf.setLength(totalBytes);
+                }
+                downloadChunks(origins, raf.getChannel(), journal, totalBytes, alreadyDownloaded, threads, listener, watermark);
             }
-        }
 
-        final BitSet[] completedChunksRef = {completedChunks};
-        final long finalTotalBytes = totalBytes;
-        final int finalTotalChunks = totalChunks;
-        final Path finalMetaFile = metaFile;
+            try {
+                Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING);
+            }
+            journal.delete();
+        }
+        CleanroomRelauncher.LOGGER.info("Downloaded (multi-chunk) Java from {}", origins.get(0));
+    }
 
+    private static void downloadChunks(List<String> origins, FileChannel channel, ChunkJournal journal, long totalBytes, long alreadyDownloaded,
+                                       int threads, ProgressListener listener, DownloadWatermark watermark) throws IOException {
         AtomicLong downloaded = new AtomicLong(alreadyDownloaded);
         AtomicBoolean failed = new AtomicBoolean(false);
+        RangeScheduler scheduler = new RangeScheduler(journal, CHUNK_SIZE);
+        // Segments no longer line up with journal chunks, so count the bytes written into each chunk instead
+        AtomicLongArray chunkWritten = new AtomicLongArray(journal.totalChunks());
+        // Workers are spread over the origins; a faster origin ends up serving more because its workers take
+        // larger segments and steal the tails of slower ones
+        AtomicLongArray originBytes = new AtomicLongArray(origins.size());
+        AtomicReferenceArray<String> resolved = new AtomicReferenceArray<>(origins.toArray(new String[0]));
         ExecutorService pool = Executors.newFixedThreadPool(threads);
         List<Future<?>> futures = new ArrayList<>();
 
-        for (int i = 0; i < totalChunks; i++) {
-            if (completedChunks.get(i)) {
-                continue;
-            }
-            final int chunkIndex = i;
-            final long start = (long) i * CHUNK_SIZE;
-            final long end = Math.min(totalBytes - 1, (i + 1) * CHUNK_SIZE - 1);
+        for (int t = 0; t < threads; t++) {
+            final int firstOrigin = t % origins.size();
             futures.add(pool.submit((Callable<Void>) () -> {
+                int origin = firstOrigin;
+                ByteBuffer buf = ByteBuffer.allocate(CHUNK_WRITE_BUFFER_SIZE);
+                byte[] array = buf.array();
+                double bytesPerSecond = 0D;
                 int attempt = 0;
                 IOException last = null;
-                while (attempt < CHUNK_RETRY_ATTEMPTS && !failed.get()) {
+                RangeScheduler.Segment segment;
+                while (!failed.get() && (segment = scheduler.next(bytesPerSecond)) != null) {
+                    long position = segment.start;
+                    long started = System.nanoTime();
                     HttpURLConnection conn = null;
                     try {
-                        URL url = new URL(urlStr);
-                        conn = (HttpURLConnection) url.openConnection();
+                        String requested = resolved.get(origin);
+                        conn = (HttpURLConnection) new URL(requested).openConnection();
+                        segment.connection = conn;
                         conn.setRequestMethod("GET");
                         conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
                         conn.setReadTimeout(CHUNK_TIMEOUT_MINUTES * 60_000);
                         conn.setRequestProperty("User-Agent", USER_AGENT);
                         conn.setRequestProperty("Accept", "application/octet-stream");
-                        conn.setRequestProperty("Range", "bytes=" + start + "-" + end);
+                        long end = segment.end();
+                        if (position >= end) {
+                            // Stolen in full before we even connected
+                            scheduler.claim(segment, 0L);
+                            continue;
+                        }
+                        conn.setRequestProperty("Range", "bytes=" + position + "-" + (end - 1));
                         int code = conn.getResponseCode();
-                        if (code != 206 && code != 200) throw new IOException("Unexpected HTTP " + code + " for range " + start + "-" + end);
-                        try (InputStream in = new BufferedInputStream(conn.getInputStream());
-                             RandomAccessFile raf = new RandomAccessFile(temp.toFile(), "rw")) {
-                            raf.seek(start);
-                            byte[] buf = new byte[8192];
-                            long toRead = (end - start + 1);
-                            while (toRead > 0) {
-                                int n = in.read(buf, 0, (int) Math.min(buf.length, toRead));
-                                if (n < 0) break;
-                                raf.write(buf, 0, n);
-                                toRead -= n;
-                                long cur = downloaded.addAndGet(n);
+                        if (code != 206) throw new IOException("Unexpected HTTP " + code + " for range " + position + "-" + (end - 1));
+                        long servedTotal = totalFromContentRange(conn.getHeaderField("Content-Range"));
+                        if (servedTotal >= 0 && servedTotal != totalBytes) {
+                            throw new IOException("Origin serves " + servedTotal + " bytes, expected " + totalBytes);
+                        }
+                        // Later segments go straight to wherever the origin redirected us
+                        resolved.compareAndSet(origin, requested, conn.getURL().toString());
+                        try (InputStream in = conn.getInputStream()) {
+                            while (position < end && !failed.get()) {
+                                // Fill the whole buffer before touching the file, so each write is large
+                                int filled = 0;
+                                int want = (int) Math.min(array.length, end - position);
+                                boolean eof = false;
+                                while (filled < want && position + filled < segment.end()) {
+                                    int n = in.read(array, filled, want - filled);
+                                    if (n < 0) {
+                                        eof = true;
+                                        break;
+                                    }
+                                    filled += n;
+                                    segment.received(n);
+                                    DownloadThrottle.acquire(n);
+                                }
+                                // Another worker may have stolen the tail meanwhile; only write what is still ours
+                                int allowed = (int) scheduler.claim(segment, filled);
+                                buf.clear();
+                                buf.limit(allowed);
+                                long writeAt = position;
+                                while (buf.hasRemaining()) {
+                                    writeAt += channel.write(buf, writeAt);
+                                }
+                                recordWritten(channel, journal, chunkWritten, position, allowed, buf, scheduler, watermark);
+                                position += allowed;
+                                originBytes.addAndGet(origin, allowed);
+                                long cur = downloaded.addAndGet(allowed);
                                 if (listener != null) {
-                                    try { listener.onProgress(cur, finalTotalBytes); } catch (Throwable ignored) {}
+                                    try { listener.onProgress(cur, totalBytes); } catch (Throwable ignored) {}
                                 }
-                                if (failed.get()) break;
+                                end = segment.end();
+                                if (eof && position < end) throw new IOException("Early EOF for range " + position + "-" + (end - 1));
                             }
-                            if (toRead > 0 && !failed.get()) throw new IOException("Early EOF for chunk " + start + "-" + end);
                         }
-                        synchronized (completedChunksRef) {
-                            completedChunksRef[0].set(chunkIndex);
-                            saveMetadata(finalMetaFile, finalTotalBytes, finalTotalChunks, completedChunksRef[0]);
+                        long elapsed = System.nanoTime() - started;
+                        if (elapsed > 0 && position > segment.start) {
+                            double rate = (position - segment.start) / (elapsed / 1e9D);
+                            bytesPerSecond = bytesPerSecond > 0 ? (bytesPerSecond + rate) / 2 : rate;
                         }
-                        return null;
+                        attempt = 0;
                     } catch (IOException e) {
+                        scheduler.release(segment);
+                        if (scheduler.isFinished()) {
+                            break;
+                        }
                         last = e;
-                        attempt++;
+                        if (DownloadThrottle.isCancelled()) {
+                            failed.set(true);
+                            scheduler.finish();
+                            throw last;
+                        }
+                        // A resolved URL may have expired (signed CDN links do); follow the redirect again next time
+                        resolved.set(origin, origins.get(origin));
+                        // Move on to the next origin; the failed range goes back to whoever asks first
+                        origin = (origin + 1) % origins.size();
+                        if (++attempt >= CHUNK_RETRY_ATTEMPTS) {
+                            failed.set(true);
+                            scheduler.finish();
+                            throw last;
+                        }
                         try { Thread.sleep(500L * attempt); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
                     } finally {
                         if (conn != null) conn.disconnect();
                     }
                 }
-                failed.set(true);
-                throw last != null ? last : new IOException("Failed to download chunk " + start + "-" + end);
+                return null;
             }));
         }
 
         pool.shutdown();
         for (Future<?> f : futures) {
             try {
-                f.get(CHUNK_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+                f.get();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 failed.set(true);
+                scheduler.finish();
                 pool.shutdownNow();
                 throw new IOException("Interrupted while downloading", e);
             } catch (ExecutionException e) {
                 failed.set(true);
+                scheduler.finish();
                 pool.shutdownNow();
                 throw new IOException("Chunk task failed", e.getCause());
-            } catch (TimeoutException e) {
-                failed.set(true);
-                pool.shutdownNow();
-                throw new IOException("Timed out waiting for chunk", e);
             }
         }
 
-        if (failed.get()) {
+        if (failed.get() || journal.completedCount() != journal.totalChunks()) {
             throw new IOException("Multi-chunk download failed");
         }
-
-        try {
-            Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-        } catch (AtomicMoveNotSupportedException e) {
-            Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING);
+        journal.flush();
+        if (origins.size() > 1) {
+            for (int i = 0; i < origins.size(); i++) {
+                CleanroomRelauncher.LOGGER.info("Received {} bytes from {}", originBytes.get(i), origins.get(i));
+            }
         }
-        try { Files.deleteIfExists(metaFile); } catch (IOException ignore) {}
-        CleanroomRelauncher.LOGGER.info("Downloaded (multi-chunk) Java from {}", urlStr);
     }
 
-    private static void saveMetadata(Path metaFile, long totalBytes, int totalChunks, BitSet completedChunks) {
-        try {
-            Properties meta = new Properties();
-            meta.setProperty("totalBytes", String.valueOf(totalBytes));
-            meta.setProperty("totalChunks", String.valueOf(totalChunks));
-            byte[] chunkBytes = completedChunks.toByteArray();
-            meta.setProperty("completedChunks", bytesToHex(chunkBytes));
-            try (OutputStream out = Files.newOutputStream(metaFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                meta.store(out, "Multi-chunk download metadata");
+    /**
+     * Adds freshly written bytes to the per-chunk counters and records every chunk that became complete in the
+     * journal, checksumming it from the file since its bytes may have come from several connections.
+     */
+    private static void recordWritten(FileChannel channel, ChunkJournal journal, AtomicLongArray chunkWritten, long position, long length,
+                                      ByteBuffer buf, RangeScheduler scheduler, DownloadWatermark watermark) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            int chunk = (int) (position / CHUNK_SIZE);
+            long chunkEnd = journal.chunkEnd(chunk) + 1;
+            long part = Math.min(end, chunkEnd) - position;
+            if (chunkWritten.addAndGet(chunk, part) == chunkEnd - journal.chunkStart(chunk)) {
+                journal.markComplete(chunk, checksum(channel, journal.chunkStart(chunk), chunkEnd, buf));
+                if (watermark != null) watermark.advance(journal.contiguousBytes());
+                if (journal.completedCount() == journal.totalChunks()) {
+                    scheduler.finish();
+                }
             }
-        } catch (IOException e) {
-            CleanroomRelauncher.LOGGER.warn("Failed to save download metadata: {}", e.toString());
+            position += part;
         }
     }
 
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder(bytes.length * 2);
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b & 0xff));
+    private static int checksum(FileChannel channel, long start, long end, ByteBuffer buf) throws IOException {
+        CRC32 crc = new CRC32();
+        long position = start;
+        while (position < end) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - position));
+            int n = channel.read(buf, position);
+            if (n < 0) throw new EOFException("Unexpected end of download at byte " + position);
+            crc.update(buf.array(), 0, n);
+            position += n;
         }
-        return sb.toString();
+        return (int) crc.getValue();
     }
 
-    private static void cleanupStalePartialFiles(Path baseDir, String expectedFileName) {
+    /**
+     * Deletes partial downloads nothing has written to for {@link #STALE_PARTIAL_MILLIS}. Another instance may be
+     * downloading into the same directory right now, and its files are written to all the time; a download whose
+     * files all sat still that long is abandoned. Meant for the start of a launch, not for background work.
+     */
+    public static void cleanupStalePartialFiles(Path baseDir) {
         if (!Files.exists(baseDir)) {
             return;
         }
-        
+        // The .part file, its journal and legacy metadata of one download go together
+        Map<String, List<Path>> downloads = new HashMap<>();
+        Map<String, Long> lastWritten = new HashMap<>();
         try (Stream<Path> files = Files.list(baseDir)) {
-            files.filter(path -> {
+            files.forEach(path -> {
                 String name = path.getFileName().toString();
-                return (name.endsWith(".part") || name.endsWith(".part.meta")) && 
-                       !name.startsWith(expectedFileName);
-            }).forEach(staleFile -> {
+                if (name.endsWith(".part") || name.endsWith(".part.meta") || name.endsWith(".part.journal")) {
+                    String download = name.substring(0, name.lastIndexOf(".part"));
+                    downloads.computeIfAbsent(download, key -> new ArrayList<>()).add(path);
+                    lastWritten.merge(download, lastModified(path), Math::max);
+                }
+            });
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Failed to cleanup stale partial files: {}", e.toString());
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - STALE_PARTIAL_MILLIS;
+        for (Map.Entry<String, List<Path>> download : downloads.entrySet()) {
+            if (lastWritten.get(download.getKey()) >= cutoff) continue;
+            for (Path staleFile : download.getValue()) {
                 try {
                     Files.deleteIfExists(staleFile);
                     CleanroomRelauncher.LOGGER.info("Cleaned up stale partial file: {}", staleFile.getFileName());
                 } catch (IOException e) {
                     CleanroomRelauncher.LOGGER.warn("Failed to delete stale partial file {}: {}", staleFile.getFileName(), e.toString());
                 }
-            });
-        } catch (IOException e) {
-            CleanroomRelauncher.LOGGER.warn("Failed to cleanup stale partial files: {}", e.toString());
+            }
         }
     }
 
-    private static byte[] hexToBytes(String hex) {
-        int len = hex.length();
-        byte[] data = new byte[len / 2];
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4) + Character.digit(hex.charAt(i + 1), 16));
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE; // Gone already
         }
-        return data;
     }
 }
\ No newline at end of file
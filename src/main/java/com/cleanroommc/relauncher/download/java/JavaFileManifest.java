@@ -0,0 +1,206 @@
+package com.cleanroommc.relauncher.download.java;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.cleanroommc.relauncher.download.cache.CacheScrubber;
+import com.cleanroommc.relauncher.download.cache.VerificationLedger;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size and CRC-32 of every file extracted into a Java installation, keyed by its path below the archive's top
+ * directory (which changes name with every release). Written next to the receipt, so the next patch release can
+ * be extracted as a delta: files whose size and CRC-32 match are hardlinked from the installed tree instead of
+ * being written again.
+ */
+final class JavaFileManifest {
+
+    static final String FILE_NAME = "files.json";
+
+    // The directory inside the installation the file paths are relative to
+    @SerializedName("root")
+    private String root;
+    @SerializedName("files")
+    private Map<String, FileEntry> files = new TreeMap<>();
+
+    // Set on a manifest read from an installation: where its files are
+    private transient Path home;
+    // Set while extracting: the archive's top directory, or "" once entries with different ones were seen
+    private transient String archiveRoot;
+    private transient AtomicInteger reusedFiles = new AtomicInteger();
+    private transient AtomicLong reusedBytes = new AtomicLong();
+
+    JavaFileManifest() { }
+
+    /**
+     * @return the manifest of the installation in {@code installDir}, or null if it has none
+     */
+    static JavaFileManifest read(Path installDir) {
+        Path file = installDir.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            JavaFileManifest manifest = CleanroomRelauncher.GSON.fromJson(reader, JavaFileManifest.class);
+            if (manifest == null || manifest.root == null || manifest.files == null) {
+                return null;
+            }
+            manifest.home = installDir.resolve(manifest.root);
+            return Files.isDirectory(manifest.home) ? manifest : null;
+        } catch (IOException | RuntimeException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to read {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return the installed file the archive entry {@code entryName} would be identical to, or null. The manifest
+     * only says what the file held when it was extracted, so it is only trusted once the scrubber has checked the
+     * file in its current state.
+     */
+    Path reusable(String entryName, long size, long crc) {
+        FileEntry entry = this.files.get(relative(entryName));
+        if (entry == null || entry.size != size || crc < 0 || entry.crc != crc) {
+            return null;
+        }
+        Path file = onDisk(entryName, size);
+        return file != null && Long.toHexString(crc).equals(VerificationLedger.lookup(file, VerificationLedger.CRC32)) ? file : null;
+    }
+
+    /**
+     * @return the installed file at the same place as {@code entryName} with the same size, or null. Whether the
+     * content matches has to be found out by comparing, as tar headers carry no checksum of the data.
+     */
+    Path sameSize(String entryName, long size) {
+        FileEntry entry = this.files.get(relative(entryName));
+        if (entry == null || entry.size != size) {
+            return null;
+        }
+        return onDisk(entryName, size);
+    }
+
+    synchronized void record(String entryName, long size, long crc) {
+        String name = normalize(entryName);
+        int slash = name.indexOf('/');
+        String top = slash < 0 ? "" : name.substring(0, slash);
+        if (this.archiveRoot == null) {
+            this.archiveRoot = top;
+        } else if (!this.archiveRoot.equals(top)) {
+            this.archiveRoot = "";
+        }
+        FileEntry entry = new FileEntry();
+        entry.size = size;
+        entry.crc = crc;
+        this.files.put(relative(entryName), entry);
+    }
+
+    /**
+     * Hardlinks {@code source} to {@code target}, or copies it where links are not supported.
+     */
+    void reuse(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        this.reusedFiles.incrementAndGet();
+        this.reusedBytes.addAndGet(Files.size(target));
+    }
+
+    int reusedFiles() {
+        return this.reusedFiles.get();
+    }
+
+    long reusedBytes() {
+        return this.reusedBytes.get();
+    }
+
+    /**
+     * @return what every file of this installed tree should hash to. Damage anywhere quarantines the receipt of
+     * {@code installDir}, so the next launch installs it again through staging and
+     * {@link JavaArchiveExtractor#promote} like any update; the tree itself stays put for whoever runs from it.
+     */
+    List<CacheScrubber.Expected> expectations(Path installDir) {
+        List<CacheScrubber.Expected> expected = new ArrayList<>();
+        Path receipt = installDir.resolve(JavaInstallReceipt.FILE_NAME);
+        for (Map.Entry<String, FileEntry> file : this.files.entrySet()) {
+            expected.add(CacheScrubber.Expected.crc(this.home.resolve(file.getKey()), file.getValue().size, file.getValue().crc, receipt));
+        }
+        return expected;
+    }
+
+    int fileCount() {
+        return this.files.size();
+    }
+
+    /**
+     * Stores the manifest in {@code installDir}, provided the archive had a single top directory and it is the
+     * only directory there. Otherwise nothing is written and the next update is extracted in full.
+     */
+    void write(Path installDir) throws IOException {
+        Path home = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(installDir, Files::isDirectory)) {
+            for (Path dir : stream) {
+                if (home != null) {
+                    return;
+                }
+                home = dir;
+            }
+        }
+        if (home == null || this.archiveRoot == null || this.archiveRoot.isEmpty()) {
+            return;
+        }
+        this.root = home.getFileName().toString();
+        Path temp = installDir.resolve(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            CleanroomRelauncher.GSON.toJson(this, writer);
+        }
+        Files.move(temp, installDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path onDisk(String entryName, long size) {
+        Path file = this.home.resolve(relative(entryName)).normalize();
+        try {
+            return file.startsWith(this.home) && Files.isRegularFile(file) && Files.size(file) == size ? file : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String relative(String entryName) {
+        String name = normalize(entryName);
+        int slash = name.indexOf('/');
+        return slash < 0 ? name : name.substring(slash + 1);
+    }
+
+    private static String normalize(String entryName) {
+        String name = entryName.replace('\\', '/');
+        while (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        return name;
+    }
+
+    private static final class FileEntry {
+
+        @SerializedName("size")
+        long size;
+        @SerializedName("crc")
+        long crc;
+
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.cleanroommc.relauncher.download.java;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Describes a Java installation the relauncher set up: where its executable is and what it is. Written into the
+ * install directory once the install is complete, so later launches find and identify it with a few file reads
+ * instead of walking the tree or guessing from the path.
+ */
+public final class JavaInstallReceipt {
+
+    static final String FILE_NAME = "receipt.json";
+    // bin/java, <root>/bin/java and <root>/Contents/Home/bin/java sit at most this far below the install directory
+    private static final int MAX_DEPTH = 5;
+
+    @SerializedName("executable")
+    private String executable;
+    @SerializedName("vendor")
+    private String vendor;
+    @SerializedName("version")
+    private String version;
+    @SerializedName("majorVersion")
+    private int majorVersion;
+    @SerializedName("os")
+    private String os;
+    @SerializedName("arch")
+    private String arch;
+    @SerializedName("imageType")
+    private String imageType;
+    @SerializedName("stamp")
+    private String stamp;
+    @SerializedName("installedAt")
+    private long installedAt;
+
+    private transient Path installDir;
+
+    private JavaInstallReceipt() { }
+
+    /**
+     * Records the installation in {@code installDir} whose java executable is {@code javaBin}.
+     */
+    static JavaInstallReceipt write(Path installDir, Path javaBin, String vendor, int majorVersion, String os, String arch, String imageType) throws IOException {
+        JavaInstallReceipt receipt = new JavaInstallReceipt();
+        Path home = javaBin.toAbsolutePath().getParent().getParent();
+        JavaRelease release = JavaRelease.read(home);
+        receipt.installDir = installDir;
+        // A Java adopted from elsewhere on the system keeps its absolute path
+        receipt.executable = (javaBin.toAbsolutePath().startsWith(installDir.toAbsolutePath())
+                ? installDir.toAbsolutePath().relativize(javaBin.toAbsolutePath())
+                : javaBin.toAbsolutePath()).toString().replace('\\', '/');
+        receipt.vendor = vendor;
+        receipt.version = release == null ? String.valueOf(majorVersion) : release.runtimeVersion();
+        receipt.majorVersion = release == null || release.majorVersion() <= 0 ? majorVersion : release.majorVersion();
+        receipt.os = os;
+        receipt.arch = arch;
+        receipt.imageType = imageType;
+        receipt.stamp = stampOf(home, javaBin);
+        receipt.installedAt = System.currentTimeMillis();
+        Files.createDirectories(installDir);
+        Path temp = installDir.resolve(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            CleanroomRelauncher.GSON.toJson(receipt, writer);
+        }
+        Files.move(temp, installDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return receipt;
+    }
+
+    /**
+     * @return the receipt in {@code installDir} if it still matches the installation, otherwise null
+     */
+    public static JavaInstallReceipt read(Path installDir) {
+        Path file = installDir.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        JavaInstallReceipt receipt;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            receipt = CleanroomRelauncher.GSON.fromJson(reader, JavaInstallReceipt.class);
+        } catch (IOException | RuntimeException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to read {}: {}", file, e.toString());
+            return null;
+        }
+        if (receipt == null || receipt.executable == null || receipt.stamp == null) {
+            return null;
+        }
+        receipt.installDir = installDir;
+        Path javaBin = receipt.executable();
+        try {
+            if (!Files.isRegularFile(javaBin) || !receipt.stamp.equals(stampOf(javaBin.getParent().getParent(), javaBin))) {
+                CleanroomRelauncher.LOGGER.info("Java installation in {} changed since it was installed", installDir);
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return receipt;
+    }
+
+    /**
+     * @return the receipt of the installation {@code javaBin} belongs to. For a Java the relauncher did not install,
+     * one describing it from its release file; null if neither exists
+     */
+    public static JavaInstallReceipt ofExecutable(Path javaBin) {
+        Path absolute = javaBin.toAbsolutePath().normalize();
+        Path dir = absolute.getParent();
+        for (int depth = 0; dir != null && depth < MAX_DEPTH; depth++, dir = dir.getParent()) {
+            if (Files.isRegularFile(dir.resolve(FILE_NAME))) {
+                JavaInstallReceipt receipt = read(dir);
+                if (receipt != null && receipt.executable().normalize().equals(absolute)) {
+                    return receipt;
+                }
+                break;
+            }
+        }
+        JavaRelease release = JavaRelease.ofExecutable(absolute);
+        if (release == null) {
+            return null;
+        }
+        JavaInstallReceipt receipt = new JavaInstallReceipt();
+        receipt.installDir = release.home();
+        receipt.executable = release.home().relativize(absolute).toString().replace('\\', '/');
+        receipt.vendor = vendorOf(release.implementor());
+        receipt.version = release.runtimeVersion();
+        receipt.majorVersion = release.majorVersion();
+        receipt.arch = archOf(release.get("OS_ARCH"));
+        String osName = release.get("OS_NAME");
+        receipt.os = osName == null ? null : osName.toLowerCase(Locale.ROOT);
+        receipt.imageType = release.get("IMAGE_TYPE") == null ? null : release.get("IMAGE_TYPE").toLowerCase(Locale.ROOT);
+        return receipt;
+    }
+
+    public Path executable() {
+        return this.installDir.resolve(this.executable);
+    }
+
+    /**
+     * @return "temurin", "graalvm", or the lower-cased implementor of a Java the relauncher did not install
+     */
+    public String vendor() {
+        return this.vendor;
+    }
+
+    public String version() {
+        return this.version;
+    }
+
+    public int majorVersion() {
+        return this.majorVersion;
+    }
+
+    public String os() {
+        return this.os;
+    }
+
+    /**
+     * @return "x64" or "aarch64", or null if unknown
+     */
+    public String arch() {
+        return this.arch;
+    }
+
+    public String imageType() {
+        return this.imageType;
+    }
+
+    private static String stampOf(Path home, Path javaBin) throws IOException {
+        Path modules = home.resolve("lib").resolve("modules");
+        return Files.size(modules) + ":" + Files.getLastModifiedTime(modules).toMillis() + ":" + Files.size(javaBin);
+    }
+
+    private static String vendorOf(String implementor) {
+        if (implementor == null) return null;
+        String lower = implementor.toLowerCase(Locale.ROOT);
+        if (lower.contains("adoptium") || lower.contains("temurin")) return "temurin";
+        if (lower.contains("graalvm")) return "graalvm";
+        return lower;
+    }
+
+    private static String archOf(String osArch) {
+        if (osArch == null) return null;
+        String lower = osArch.toLowerCase(Locale.ROOT);
+        if (lower.equals("aarch64") || lower.equals("arm64")) return "aarch64";
+        if (lower.equals("x86_64") || lower.equals("amd64") || lower.equals("x64")) return "x64";
+        return lower;
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.cleanroommc.relauncher.download.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The places Java is usually installed on this platform, outside of the relauncher's own store.
+ */
+public final class JavaLocations {
+
+    private JavaLocations() { }
+
+    /**
+     * Lists java executables in the usual install locations, canonicalized and without duplicates. Only directories
+     * are listed; nothing is run.
+     */
+    public static List<Path> systemExecutables() {
+        Set<String> found = new LinkedHashSet<>();
+        List<Path> homes = new ArrayList<>();
+        List<Path> roots = new ArrayList<>();
+        String userHome = System.getProperty("user.home");
+
+        homes.add(Paths.get(System.getProperty("java.home")));
+        String javaHome = System.getenv("JAVA_HOME");
+        if (javaHome != null && !javaHome.isEmpty()) {
+            homes.add(Paths.get(javaHome));
+        }
+        String path = System.getenv("PATH");
+        if (path != null) {
+            for (String dir : path.split(File.pathSeparator)) {
+                if (!dir.isEmpty()) {
+                    addExecutable(found, Paths.get(dir));
+                }
+            }
+        }
+
+        roots.add(Paths.get(userHome, ".jdks"));
+        roots.add(Paths.get(userHome, ".gradle", "jdks"));
+        roots.add(Paths.get(userHome, ".sdkman", "candidates", "java"));
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        if (os.contains("win")) {
+            for (String programFiles : new String[] { System.getenv("ProgramFiles"), System.getenv("ProgramFiles(x86)") }) {
+                if (programFiles == null) continue;
+                for (String vendor : new String[] { "Java", "Eclipse Adoptium", "Eclipse Foundation", "Zulu", "Microsoft",
+                        "BellSoft", "Amazon Corretto", "Semeru", "GraalVM" }) {
+                    roots.add(Paths.get(programFiles, vendor));
+                }
+            }
+        } else if (os.contains("mac")) {
+            roots.add(Paths.get("/Library/Java/JavaVirtualMachines"));
+            roots.add(Paths.get(userHome, "Library", "Java", "JavaVirtualMachines"));
+        } else {
+            roots.add(Paths.get("/usr/lib/jvm"));
+            roots.add(Paths.get("/usr/java"));
+            roots.add(Paths.get("/opt/java"));
+            roots.add(Paths.get("/opt/jdk"));
+        }
+
+        for (Path root : roots) {
+            homes.addAll(subdirectories(root));
+        }
+        for (Path home : homes) {
+            addExecutable(found, home.resolve("bin"));
+            addExecutable(found, home.resolve("Contents").resolve("Home").resolve("bin"));
+        }
+        List<Path> executables = new ArrayList<>();
+        for (String executable : found) {
+            executables.add(Paths.get(executable));
+        }
+        return executables;
+    }
+
+    static List<Path> subdirectories(Path dir) {
+        List<Path> children = new ArrayList<>();
+        File[] files = dir.toFile().listFiles(File::isDirectory);
+        if (files != null) {
+            for (File file : files) {
+                children.add(file.toPath());
+            }
+        }
+        return children;
+    }
+
+    private static void addExecutable(Set<String> found, Path bin) {
+        for (String name : new String[] { "java.exe", "java" }) {
+            File file = bin.resolve(name).toFile();
+            if (file.isFile()) {
+                try {
+                    found.add(file.getCanonicalPath());
+                } catch (IOException e) {
+                    found.add(file.getAbsolutePath());
+                }
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.cleanroommc.relauncher.download.java;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@code release} file every JDK and JRE image carries in its home directory, read without starting the JVM.
+ */
+public final class JavaRelease {
+
+    private final Path home;
+    private final Map<String, String> properties;
+
+    private JavaRelease(Path home, Map<String, String> properties) {
+        this.home = home;
+        this.properties = properties;
+    }
+
+    /**
+     * @return the release file of the installation {@code javaExecutable} belongs to, or null if it has none
+     */
+    public static JavaRelease ofExecutable(Path javaExecutable) {
+        Path bin = javaExecutable.toAbsolutePath().getParent();
+        if (bin == null || bin.getParent() == null) {
+            return null;
+        }
+        return read(bin.getParent());
+    }
+
+    /**
+     * @return the release file in {@code home}, or null if it is missing or unreadable
+     */
+    public static JavaRelease read(Path home) {
+        Path file = home.resolve("release");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int eq = line.indexOf('=');
+                if (eq <= 0) continue;
+                String value = line.substring(eq + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                properties.put(line.substring(0, eq).trim(), value);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return properties.containsKey("JAVA_VERSION") ? new JavaRelease(home, properties) : null;
+    }
+
+    public Path home() {
+        return this.home;
+    }
+
+    public String get(String key) {
+        return this.properties.get(key);
+    }
+
+    /**
+     * @return the feature version, e.g. 21 for "21.0.5" and 8 for "1.8.0_432", or -1 if it cannot be parsed
+     */
+    public int majorVersion() {
+        String version = this.properties.get("JAVA_VERSION");
+        String[] parts = version.split("[._+\\-]");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            return major == 1 && parts.length > 1 ? Integer.parseInt(parts[1]) : major;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the full build string, e.g. "21.0.5+11-LTS", falling back to the plain version on older images
+     */
+    public String runtimeVersion() {
+        String runtime = this.properties.get("JAVA_RUNTIME_VERSION");
+        return runtime == null || runtime.isEmpty() ? this.properties.get("JAVA_VERSION") : runtime;
+    }
+
+    public String implementor() {
+        return this.properties.get("IMPLEMENTOR");
+    }
+
+}
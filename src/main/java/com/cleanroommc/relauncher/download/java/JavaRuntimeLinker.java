@@ -0,0 +1,129 @@
+package com.cleanroommc.relauncher.download.java;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds a trimmed runtime image out of a downloaded JDK with jlink: no development tools, no debug
+ * attributes, compressed resources and a fresh base CDS archive.
+ */
+final class JavaRuntimeLinker {
+
+    // Tools and their support modules; nothing a relaunched game or its mods load at runtime
+    private static final Set<String> TOOL_MODULES = new HashSet<>(Arrays.asList(
+            "jdk.compiler", "jdk.javadoc", "jdk.jshell", "jdk.jdeps", "jdk.jlink", "jdk.jpackage", "jdk.jartool",
+            "jdk.jconsole", "jdk.jdi", "jdk.jstatd", "jdk.jcmd", "jdk.hotspot.agent", "jdk.editpad",
+            "jdk.internal.ed", "jdk.internal.le", "jdk.internal.opt", "jdk.internal.md"));
+    private static final long LINK_TIMEOUT_MINUTES = 10L;
+    // The release file of a linked image only keeps the plain version, so the source build is recorded here
+    private static final String STAMP_FILE = "linked-from";
+
+    private JavaRuntimeLinker() { }
+
+    /**
+     * @return whether {@code jdkHome} is a JDK with the packaged modules jlink needs
+     */
+    static boolean canLink(Path jdkHome) {
+        return Files.isDirectory(jdkHome.resolve("jmods")) && Files.isRegularFile(jlinkOf(jdkHome));
+    }
+
+    /**
+     * @return whether {@code runtimeHome} holds an image linked from the same build as {@code jdkHome}
+     */
+    static boolean isLinkedFrom(Path runtimeHome, Path jdkHome) {
+        Path stamp = runtimeHome.resolve(STAMP_FILE);
+        if (!Files.isRegularFile(stamp) || !Files.isDirectory(runtimeHome.resolve("bin"))) {
+            return false;
+        }
+        try {
+            return new String(Files.readAllBytes(stamp), StandardCharsets.UTF_8).equals(stampOf(jdkHome));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Links a runtime image from {@code jdkHome} into {@code targetDir}, replacing whatever was there.
+     */
+    static void link(Path jdkHome, Path targetDir) throws IOException {
+        Path jmods = jdkHome.resolve("jmods");
+        List<String> modules;
+        try (Stream<Path> stream = Files.list(jmods)) {
+            modules = stream.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(".jmod"))
+                    .map(name -> name.substring(0, name.length() - ".jmod".length()))
+                    .filter(name -> !TOOL_MODULES.contains(name))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        Path stagingDir = targetDir.resolveSibling(targetDir.getFileName() + ".staging");
+        Path log = targetDir.resolveSibling(targetDir.getFileName() + ".log");
+        JavaArchiveExtractor.deleteTree(stagingDir);
+
+        List<String> command = new ArrayList<>();
+        command.add(jlinkOf(jdkHome).toString());
+        command.add("--module-path");
+        command.add(jmods.toString());
+        command.add("--add-modules");
+        command.add(String.join(",", modules));
+        command.add("--strip-debug");
+        command.add("--no-header-files");
+        command.add("--no-man-pages");
+        command.add("--compress=zip-6");
+        // A trimmed image has no classes.jsa of its own unless jlink generates one
+        command.add("--generate-cds-archive");
+        command.add("--output");
+        command.add(stagingDir.toString());
+
+        long startedAt = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            if (!process.waitFor(LINK_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                process.destroyForcibly();
+                throw new IOException("jlink did not finish within " + LINK_TIMEOUT_MINUTES + " minutes");
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while linking the runtime image", e);
+        }
+        if (process.exitValue() != 0) {
+            JavaArchiveExtractor.deleteTree(stagingDir);
+            throw new IOException("jlink exited with code " + process.exitValue() + ", see " + log);
+        }
+        Files.write(stagingDir.resolve(STAMP_FILE), stampOf(jdkHome).getBytes(StandardCharsets.UTF_8));
+        JavaArchiveExtractor.promote(stagingDir, targetDir);
+        Files.deleteIfExists(log);
+        CleanroomRelauncher.LOGGER.info("Linked a {} module runtime image into {} in {} ms", modules.size(), targetDir.getFileName(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+
+    private static String stampOf(Path jdkHome) throws IOException {
+        JavaRelease release = JavaRelease.read(jdkHome);
+        Path modules = jdkHome.resolve("lib").resolve("modules");
+        return (release == null ? "unknown" : release.implementor() + "|" + release.runtimeVersion())
+                + "|" + Files.size(modules) + "|" + Files.getLastModifiedTime(modules).toMillis();
+    }
+
+    private static Path jlinkOf(Path jdkHome) {
+        Path bin = jdkHome.resolve("bin");
+        Path exe = bin.resolve("jlink.exe");
+        return Files.isRegularFile(exe) ? exe : bin.resolve("jlink");
+    }
+
+}
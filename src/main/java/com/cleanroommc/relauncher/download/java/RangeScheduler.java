@@ -0,0 +1,219 @@
+package com.cleanroommc.relauncher.download.java;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Hands out byte ranges of a multi-chunk download to workers on demand.
+ * <p>
+ * Each worker asks for a segment sized to its own measured throughput. Once nothing is left unassigned, an
+ * idle worker steals the unfinished tail of the in-flight segment that would take longest to finish, so a
+ * slow or stalled connection only keeps the part it can plausibly complete. Byte ownership is decided under
+ * the scheduler's lock: a worker may only write what it {@link #claim claimed}, so a stolen tail is never
+ * written twice.
+ */
+final class RangeScheduler {
+
+    private static final long MIN_SEGMENT = 1024L * 1024L; // 1 MiB
+    private static final long MAX_SEGMENT = 32L * 1024L * 1024L; // 32 MiB
+    private static final long MIN_STEAL = 256L * 1024L;
+    private static final double TARGET_SEGMENT_SECONDS = 2.0D;
+    private static final long RATE_WARMUP_NANOS = 500_000_000L;
+    private static final long STALL_NANOS = 5_000_000_000L;
+    private static final long IDLE_POLL_MILLIS = 1000L;
+
+    private final long initialSegment;
+    private final Deque<long[]> pending = new ArrayDeque<>();
+    private final List<Segment> active = new ArrayList<>();
+    private boolean finished;
+
+    /**
+     * @param initialSegment segment size handed to workers that have not measured their throughput yet
+     */
+    RangeScheduler(ChunkJournal journal, long initialSegment) {
+        this.initialSegment = initialSegment;
+        // Merge runs of incomplete journal chunks into as few ranges as possible
+        long runStart = -1L;
+        for (int i = 0; i < journal.totalChunks(); i++) {
+            if (journal.isComplete(i)) {
+                if (runStart >= 0) {
+                    this.pending.addLast(new long[] { runStart, journal.chunkStart(i) });
+                    runStart = -1L;
+                }
+            } else if (runStart < 0) {
+                runStart = journal.chunkStart(i);
+            }
+        }
+        if (runStart >= 0) {
+            this.pending.addLast(new long[] { runStart, journal.chunkEnd(journal.totalChunks() - 1) + 1 });
+        }
+    }
+
+    /**
+     * @param bytesPerSecond the caller's measured throughput, or 0 if it has none yet
+     * @return the next segment to download, or null once the download is finished or nothing is in flight
+     */
+    synchronized Segment next(double bytesPerSecond) throws InterruptedException {
+        while (!this.finished) {
+            long now = System.nanoTime();
+            Segment segment = this.pending.isEmpty() ? this.steal(bytesPerSecond, now) : this.take(bytesPerSecond, now);
+            if (segment != null) {
+                return segment;
+            }
+            if (this.active.isEmpty()) {
+                return null;
+            }
+            // Nothing worth stealing yet; stay around in case a connection stalls or fails
+            this.wait(IDLE_POLL_MILLIS);
+        }
+        return null;
+    }
+
+    private Segment take(double bytesPerSecond, long now) {
+        long size = bytesPerSecond > 0
+                ? Math.max(MIN_SEGMENT, Math.min(MAX_SEGMENT, (long) (bytesPerSecond * TARGET_SEGMENT_SECONDS)))
+                : this.initialSegment;
+        long[] range = this.pending.peekFirst();
+        long end = Math.min(range[1], range[0] + size);
+        if (range[1] - end < MIN_SEGMENT) {
+            end = range[1];
+        }
+        Segment segment = new Segment(range[0], end, now);
+        range[0] = end;
+        if (range[0] >= range[1]) {
+            this.pending.pollFirst();
+        }
+        this.active.add(segment);
+        return segment;
+    }
+
+    private Segment steal(double bytesPerSecond, long now) {
+        Segment victim = null;
+        long victimSplit = 0L;
+        double worstEta = 0D;
+        for (Segment segment : this.active) {
+            long remaining = segment.end - segment.position;
+            if (remaining <= 0) continue;
+            long split;
+            double eta;
+            if (now - segment.lastReadAt > STALL_NANOS) {
+                // Nothing has arrived for a while; take everything it has not claimed yet
+                split = segment.position;
+                eta = Double.MAX_VALUE;
+            } else {
+                double victimRate = segment.rate(now);
+                double thiefRate = bytesPerSecond > 0 ? bytesPerSecond : victimRate;
+                if (victimRate <= 0) {
+                    victimRate = thiefRate > 0 ? thiefRate : 1D;
+                    thiefRate = victimRate;
+                }
+                // Split so that both sides are expected to finish at the same time
+                split = segment.position + (long) (remaining * (victimRate / (victimRate + thiefRate)));
+                eta = remaining / victimRate;
+                if (segment.end - split < MIN_STEAL) continue;
+            }
+            if (victim == null || eta > worstEta) {
+                victim = segment;
+                victimSplit = split;
+                worstEta = eta;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+        Segment stolen = new Segment(victimSplit, victim.end, now);
+        victim.end = victimSplit;
+        this.active.add(stolen);
+        return stolen;
+    }
+
+    /**
+     * Claims up to {@code bytes} bytes at the segment's current position for its owner to write.
+     *
+     * @return how many bytes the owner may write; fewer than requested once the tail has been stolen
+     */
+    synchronized long claim(Segment segment, long bytes) {
+        long allowed = Math.max(0L, Math.min(bytes, segment.end - segment.position));
+        segment.position += allowed;
+        if (segment.position >= segment.end && this.active.remove(segment)) {
+            this.notifyAll();
+        }
+        return allowed;
+    }
+
+    /**
+     * Called by the owner when its connection failed: the unclaimed rest goes back to the front of the queue.
+     */
+    synchronized void release(Segment segment) {
+        if (this.active.remove(segment) && segment.position < segment.end) {
+            this.pending.addFirst(new long[] { segment.position, segment.end });
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Stops handing out work and drops the connections of workers still waiting on data nobody needs anymore.
+     */
+    synchronized void finish() {
+        this.finished = true;
+        this.notifyAll();
+        for (Segment segment : this.active) {
+            HttpURLConnection connection = segment.connection;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    synchronized boolean isFinished() {
+        return this.finished;
+    }
+
+    static final class Segment {
+
+        final long start;
+        private final long startedAt;
+        private long position;
+        // Only shrinks, and only under the scheduler's lock; owners poll it while reading
+        private volatile long end;
+        private volatile long received;
+        private volatile long lastReadAt;
+        volatile HttpURLConnection connection;
+
+        private Segment(long start, long end, long now) {
+            this.start = start;
+            this.position = start;
+            this.end = end;
+            this.startedAt = now;
+            this.lastReadAt = now;
+        }
+
+        /**
+         * @return the exclusive end of the segment as it stands right now
+         */
+        long end() {
+            return this.end;
+        }
+
+        /**
+         * Called by the owner for every read, claimed or not, so throughput and stalls are seen between claims.
+         */
+        void received(int bytes) {
+            this.received += bytes;
+            this.lastReadAt = System.nanoTime();
+        }
+
+        private double rate(long now) {
+            long elapsed = now - this.startedAt;
+            if (elapsed < RATE_WARMUP_NANOS) {
+                return 0D;
+            }
+            return this.received / (elapsed / 1e9D);
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.cleanroommc.relauncher.download.java;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers which archive a vendor lookup resolved to, keyed by vendor, major version, OS and architecture,
+ * so resolving a download costs no API requests while the entry is fresh.
+ */
+final class VendorResolutionCache {
+
+    // Vendors ship patch releases a few times a year; a day-old answer is good enough
+    private static final long TTL_MILLIS = Duration.ofHours(24).toMillis();
+
+    private final Path file;
+    private final Map<String, Entry> entries;
+
+    private VendorResolutionCache(Path file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    static VendorResolutionCache load(Path file) {
+        Map<String, Entry> entries = null;
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                entries = CleanroomRelauncher.GSON.fromJson(reader, new TypeToken<LinkedHashMap<String, Entry>>() { }.getType());
+            } catch (IOException | RuntimeException e) {
+                CleanroomRelauncher.LOGGER.warn("Unable to read {}, resolving Java downloads again: {}", file.getFileName(), e.toString());
+            }
+        }
+        return new VendorResolutionCache(file, entries == null ? new LinkedHashMap<>() : entries);
+    }
+
+    static String key(String vendor, int majorVersion, String os, String arch) {
+        return vendor + "-" + majorVersion + "-" + os + "-" + arch;
+    }
+
+    /**
+     * @return the cached resolution, or null if there is none or it has expired
+     */
+    synchronized Entry get(String key) {
+        Entry entry = this.entries.get(key);
+        if (entry == null || entry.link == null) {
+            return null;
+        }
+        boolean disableCacheTTL = CleanroomRelauncher.CONFIG != null && CleanroomRelauncher.CONFIG.isDisableCacheTTL();
+        if (!disableCacheTTL && System.currentTimeMillis() - entry.resolvedAt > TTL_MILLIS) {
+            return null;
+        }
+        return entry;
+    }
+
+    synchronized void put(String key, Entry entry) {
+        entry.resolvedAt = System.currentTimeMillis();
+        this.entries.put(key, entry);
+        try {
+            Files.createDirectories(this.file.getParent());
+            try (Writer writer = Files.newBufferedWriter(this.file)) {
+                CleanroomRelauncher.GSON.toJson(this.entries, writer);
+            }
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to save {}: {}", this.file.getFileName(), e.toString());
+        }
+    }
+
+    static final class Entry {
+
+        @SerializedName("vendor")
+        String vendor;
+        @SerializedName("imageType")
+        String imageType;
+        @SerializedName("link")
+        String link;
+        @SerializedName("name")
+        String name;
+        @SerializedName("sha256")
+        String sha256;
+        @SerializedName("releaseName")
+        String releaseName;
+        @SerializedName("size")
+        long size;
+        @SerializedName("resolvedAt")
+        long resolvedAt;
+
+    }
+
+}
@@ -4,22 +4,31 @@ import com.cleanroommc.platformutils.OperatingSystem;
 import com.cleanroommc.platformutils.Platform;
 import com.cleanroommc.relauncher.CleanroomRelauncher;
 import com.cleanroommc.relauncher.download.GlobalDownloader;
+import com.cleanroommc.relauncher.download.cache.CacheScrubber;
+import com.cleanroommc.relauncher.download.cache.CacheVerification;
+import com.cleanroommc.relauncher.download.cache.NativesStore;
+import com.cleanroommc.relauncher.download.cache.VerificationLedger;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class Version {
 
     private static final Map<OperatingSystem, String> OS_NAMES = new HashMap<>();
+    private static final int MAX_EXTRACT_THREADS = 8;
 
     static {
         OS_NAMES.put(OperatingSystem.WINDOWS, "windows");
@@ -53,6 +62,8 @@ public class Version {
 
     public transient List<String> libraryPaths = new ArrayList<>();
     public transient List<String> nativesPaths = new ArrayList<>();
+    // Natives jar -> its files (name to SHA-1), in library path order
+    public transient Map<String, Map<String, String>> nativeFiles = new LinkedHashMap<>();
 
     // TODO: multithread
     public void downloadLibraries(Path librariesDirectory) {
@@ -64,55 +75,90 @@ public class Version {
                 continue; // Locally-zipped artifact
             }
             Path libraryJar = librariesDirectory.resolve(library.downloads.artifact.getPath(library.name));
-            if (!Files.exists(libraryJar)) {
-                GlobalDownloader.INSTANCE.from(library.downloads.artifact.url, libraryJar.toFile());
+            if (!CacheVerification.isLibraryIntact(libraryJar, library.downloads.artifact.sha1, library.downloads.artifact.size)) {
+                GlobalDownloader.INSTANCE.from(library.downloads.artifact.url, libraryJar.toFile(), library.downloads.artifact.sha1);
             }
             Download nativeArtifact = library.getNative(Platform.current());
             if (nativeArtifact != null) {
                 Path nativesJar = librariesDirectory.resolve(nativeArtifact.getPath(library.name));
-                if (!Files.exists(nativesJar)) {
-                    GlobalDownloader.INSTANCE.from(nativeArtifact.url, nativesJar.toFile());
+                if (!CacheVerification.isLibraryIntact(nativesJar, nativeArtifact.sha1, nativeArtifact.size)) {
+                    GlobalDownloader.INSTANCE.from(nativeArtifact.url, nativesJar.toFile(), nativeArtifact.sha1);
                 }
             }
             libraryPaths.add(libraryJar.toAbsolutePath().toString());
         }
+        VerificationLedger.save();
     }
 
+    /**
+     * @return what the cached libraries of this version and the natives stored from them should hash to, for the
+     * {@link CacheScrubber}
+     */
+    public List<CacheScrubber.Expected> cachedFiles(Path librariesDirectory, Path nativesDirectory) {
+        List<CacheScrubber.Expected> expected = new ArrayList<>();
+        List<Version.Library> cached = new ArrayList<>(libraries);
+        if (mainJar != null && !cached.contains(mainJar)) {
+            cached.add(mainJar); // Not yet added by downloadLibraries
+        }
+        for (Version.Library library : cached) {
+            if (library.downloads == null) {
+                continue;
+            }
+            expected.add(CacheScrubber.Expected.sha1(librariesDirectory.resolve(library.downloads.artifact.getPath(library.name)),
+                    library.downloads.artifact.sha1));
+            Download nativeArtifact = library.getNative(Platform.current());
+            if (nativeArtifact == null) {
+                continue;
+            }
+            String relative = nativeArtifact.getPath(library.name);
+            expected.add(CacheScrubber.Expected.sha1(librariesDirectory.resolve(relative), nativeArtifact.sha1));
+            expected.addAll(NativesStore.objects(nativesDirectory, relative));
+        }
+        return expected;
+    }
+
+    /**
+     * Extracts the natives jars of this version into the {@link NativesStore}, in parallel, and lists their files in
+     * {@link #nativeFiles}. Jars whose files are in the store already are not opened.
+     */
     public void extractNatives(Path librariesDirectory, Path nativesDirectory) {
+        Map<String, Callable<Map<String, String>>> pending = new LinkedHashMap<>();
         for (Version.Library library : libraries) {
             Download nativeArtifact = library.getNative(Platform.current());
             if (nativeArtifact != null) {
                 String relative = nativeArtifact.getPath(library.name);
                 Path jarPath = librariesDirectory.resolve(relative);
-                Path nativesPath = nativesDirectory.resolve(relative.substring(0, relative.lastIndexOf('.')));
-                nativesPaths.add(nativesPath.toAbsolutePath().toString());
-                try (FileSystem jarFs = FileSystems.newFileSystem(jarPath, null)) {
-                    try (Stream<Path> walk = Files.walk(jarFs.getPath("/"))) {
-                        walk.filter(path -> !path.startsWith("/META-INF/"))
-                                .filter(Files::isRegularFile)
-                                .forEach(path -> {
-                                    String pathString = path.toString();
-                                    if (pathString.startsWith("/")) {
-                                        pathString = pathString.substring(1);
-                                    }
-                                    Path nativesRelativePath = nativesPath.resolve(pathString);
-                                    try {
-                                        if (!Files.exists(nativesRelativePath)) {
-                                            Files.createDirectories(nativesRelativePath.getParent());
-                                            Files.copy(path, nativesRelativePath);
-                                        }
-                                    } catch (IOException e) {
-                                        throw new RuntimeException(String.format("Unable to unzip and copy file %s to %s", path, nativesRelativePath), e);
-                                    }
-                                });
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(String.format("Unable to extract from jar %s for its natives", jarPath), e);
-                }
+                pending.put(relative, () -> NativesStore.extract(nativesDirectory, jarPath, relative, nativeArtifact.sha1));
+            }
+        }
+        int threads = Math.min(Math.min(MAX_EXTRACT_THREADS, Runtime.getRuntime().availableProcessors()), pending.size());
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            Map<String, Future<Map<String, String>>> futures = new LinkedHashMap<>();
+            for (Map.Entry<String, Callable<Map<String, String>>> extraction : pending.entrySet()) {
+                futures.put(extraction.getKey(), pool != null ? pool.submit(extraction.getValue()) : completed(extraction.getValue()));
+            }
+            for (Map.Entry<String, Future<Map<String, String>>> future : futures.entrySet()) {
+                nativeFiles.put(future.getKey(), future.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while extracting natives", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to extract natives", e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
             }
         }
     }
 
+    private static <T> Future<T> completed(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
     public class AssetIndex {
 
         public String id;
@@ -0,0 +1,194 @@
+package com.cleanroommc.relauncher.gui;
+
+import com.cleanroommc.javautils.JavaUtils;
+import com.cleanroommc.javautils.api.JavaInstall;
+import com.cleanroommc.javautils.spi.JavaLocator;
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.cleanroommc.relauncher.download.java.JavaInstallReceipt;
+import com.cleanroommc.relauncher.download.java.JavaLocations;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * What running a Java executable reported about itself. Probing starts a JVM, so results are remembered on disk
+ * per executable path and only trusted while the executable's size and time stamp are unchanged. So is which
+ * executables the platform locators found, as running those is no quicker.
+ */
+final class JavaProbe {
+
+    private static final Path CACHE_FILE = CleanroomRelauncher.CACHE_DIR.resolve("java").resolve("probes.json");
+    private static Map<String, Entry> cache;
+
+    final String executable;
+    final String vendor;
+    final String version;
+    final int majorVersion;
+
+    private JavaProbe(String executable, String vendor, String version, int majorVersion) {
+        this.executable = executable;
+        this.vendor = vendor;
+        this.version = version;
+        this.majorVersion = majorVersion;
+    }
+
+    static JavaProbe of(JavaInstall install) {
+        String executable = canonical(install.executable(true));
+        JavaProbe probe = new JavaProbe(executable, install.vendor(), String.valueOf(install.version()), install.version().major());
+        remember(new File(executable), probe, true);
+        return probe;
+    }
+
+    /**
+     * Runs the platform locators, which know places {@link #candidates()} does not, e.g. the Windows registry, and
+     * remembers what they found among the candidates from then on.
+     */
+    static List<JavaProbe> locate() {
+        return JavaLocator.locators().parallelStream()
+                .map(JavaLocator::all)
+                .flatMap(Collection::stream)
+                .map(JavaProbe::of)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return whether the platform locators ran before, so their findings are among the candidates
+     */
+    static synchronized boolean hasLocated() {
+        return cache().values().stream().anyMatch(entry -> entry.located);
+    }
+
+    /**
+     * @return the cached probe of {@code executable}, probing it first if there is none or it is outdated
+     */
+    static JavaProbe probe(File executable) throws IOException {
+        String path = canonical(executable);
+        File file = new File(path);
+        synchronized (JavaProbe.class) {
+            Entry entry = cache().get(path);
+            if (entry != null && entry.size == file.length() && entry.modified == file.lastModified()) {
+                return new JavaProbe(path, entry.vendor, entry.version, entry.majorVersion);
+            }
+        }
+        JavaInstall install = JavaUtils.parseInstall(path);
+        JavaProbe probe = new JavaProbe(path, install.vendor(), String.valueOf(install.version()), install.version().major());
+        remember(file, probe, false);
+        return probe;
+    }
+
+    /**
+     * Lists java executables in the relauncher's store, the usual install locations and wherever the platform
+     * locators found one before, without running any of them.
+     */
+    static List<File> candidates() {
+        Set<File> found = new LinkedHashSet<>();
+        synchronized (JavaProbe.class) {
+            for (Map.Entry<String, Entry> entry : cache().entrySet()) {
+                if (entry.getValue().located && new File(entry.getKey()).isFile()) {
+                    found.add(new File(entry.getKey()));
+                }
+            }
+        }
+        // The relauncher's own installs say where their executable is
+        File[] installs = CleanroomRelauncher.CACHE_DIR.resolve("java").toFile().listFiles(File::isDirectory);
+        if (installs != null) {
+            for (File install : installs) {
+                JavaInstallReceipt receipt = JavaInstallReceipt.read(install.toPath());
+                if (receipt != null) {
+                    found.add(new File(canonical(receipt.executable().toFile())));
+                }
+            }
+        }
+        for (Path executable : JavaLocations.systemExecutables()) {
+            found.add(executable.toFile());
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static String canonical(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static synchronized Map<String, Entry> cache() {
+        if (cache == null) {
+            if (Files.exists(CACHE_FILE)) {
+                try (Reader reader = Files.newBufferedReader(CACHE_FILE)) {
+                    cache = CleanroomRelauncher.GSON.fromJson(reader, new TypeToken<LinkedHashMap<String, Entry>>() { }.getType());
+                } catch (IOException | RuntimeException e) {
+                    CleanroomRelauncher.LOGGER.warn("Unable to read {}, probing Java installs again: {}", CACHE_FILE.getFileName(), e.toString());
+                }
+            }
+            if (cache == null) {
+                cache = new LinkedHashMap<>();
+            }
+        }
+        return cache;
+    }
+
+    private static synchronized void remember(File executable, JavaProbe probe, boolean located) {
+        Entry previous = cache().get(probe.executable);
+        Entry entry = new Entry();
+        entry.located = located || previous != null && previous.located;
+        entry.size = executable.length();
+        entry.modified = executable.lastModified();
+        entry.vendor = probe.vendor;
+        entry.version = probe.version;
+        entry.majorVersion = probe.majorVersion;
+        cache().put(probe.executable, entry);
+        try {
+            Files.createDirectories(CACHE_FILE.getParent());
+            try (Writer writer = Files.newBufferedWriter(CACHE_FILE)) {
+                CleanroomRelauncher.GSON.toJson(cache, writer);
+            }
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to save {}: {}", CACHE_FILE.getFileName(), e.toString());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof JavaProbe && ((JavaProbe) o).executable.equals(this.executable);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.executable.hashCode();
+    }
+
+    private static final class Entry {
+
+        @SerializedName("size")
+        long size;
+        @SerializedName("modified")
+        long modified;
+        @SerializedName("vendor")
+        String vendor;
+        @SerializedName("version")
+        String version;
+        @SerializedName("majorVersion")
+        int majorVersion;
+        // Found by a platform locator
+        @SerializedName("located")
+        boolean located;
+
+    }
+
+}
@@ -1,8 +1,5 @@
 package com.cleanroommc.relauncher.gui;
 
-import com.cleanroommc.javautils.JavaUtils;
-import com.cleanroommc.javautils.api.JavaInstall;
-import com.cleanroommc.javautils.spi.JavaLocator;
 import com.cleanroommc.platformutils.Platform;
 import com.cleanroommc.relauncher.CleanroomRelauncher;
 import com.cleanroommc.relauncher.download.CleanroomRelease;
@@ -22,6 +19,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -368,16 +370,16 @@ public class RelauncherGUI extends JDialog {
         // Java Version Dropdown
         JPanel versionDropdown = new JPanel(new BorderLayout(5, 0));
         versionDropdown.setAlignmentX(Component.LEFT_ALIGNMENT);
-        JComboBox<JavaInstall> versionBox = new JComboBox<>();
-        DefaultComboBoxModel<JavaInstall> versionModel = new DefaultComboBoxModel<>();
+        JComboBox<JavaProbe> versionBox = new JComboBox<>();
+        DefaultComboBoxModel<JavaProbe> versionModel = new DefaultComboBoxModel<>();
         versionBox.setModel(versionModel);
         versionBox.setRenderer(new DefaultListCellRenderer() {
             @Override
             public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
                 super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-                if (value instanceof JavaInstall) {
-                    JavaInstall javaInstall = (JavaInstall) value;
-                    setText(javaInstall.vendor() + " " + javaInstall.version());
+                if (value instanceof JavaProbe) {
+                    JavaProbe javaProbe = (JavaProbe) value;
+                    setText(javaProbe.vendor + " " + javaProbe.version);
                 }
                 return this;
             }
@@ -386,8 +388,8 @@ public class RelauncherGUI extends JDialog {
         versionBox.setMaximumRowCount(10);
         versionBox.addActionListener(e -> {
             if (versionBox.getSelectedItem() != null) {
-                JavaInstall javaInstall = (JavaInstall) versionBox.getSelectedItem();
-                javaPath = javaInstall.executable(true).getAbsolutePath();
+                JavaProbe javaProbe = (JavaProbe) versionBox.getSelectedItem();
+                javaPath = javaProbe.executable;
                 text.setText(javaPath);
             }
         });
@@ -454,10 +456,8 @@ public class RelauncherGUI extends JDialog {
                 JOptionPane.showMessageDialog(this, "The selected Java executable does not exist.", "Invalid Java Executable Path", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            JDialog testing = new JDialog(this, "Testing Java Executable", true);
-            testing.setLocationRelativeTo(this);
-
-            this.testJava();
+            test.setEnabled(false);
+            this.testJava(() -> test.setEnabled(true));
         });
 
         autoDetect.addActionListener(e -> {
@@ -473,36 +473,81 @@ public class RelauncherGUI extends JDialog {
             });
             timer.start();
 
-            new SwingWorker<Void, Void>() {
+            versionModel.removeAllElements();
+            new SwingWorker<Void, JavaProbe>() {
 
-                List<JavaInstall> javaInstalls = Collections.emptyList();
+                final Set<String> seen = new HashSet<>();
+                int found = 0;
 
                 @Override
-                protected Void doInBackground() {
-                    this.javaInstalls = JavaLocator.locators().parallelStream()
-                            .map(JavaLocator::all)
-                            .flatMap(Collection::stream)
-                            .filter(javaInstall -> javaInstall.version().major() >= JavaDownloader.MINIMUM_JAVA_VERSION)
-                            .distinct()
-                            .sorted()
-                            .collect(Collectors.toList());
+                protected Void doInBackground() throws InterruptedException {
+                    // Probing starts a JVM per candidate, cached ones excepted, so they run side by side
+                    List<File> candidates = JavaProbe.candidates();
+                    ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Math.min(candidates.size(), Runtime.getRuntime().availableProcessors() * 2)));
+                    try {
+                        CompletionService<JavaProbe> probes = new ExecutorCompletionService<>(executor);
+                        for (File candidate : candidates) {
+                            probes.submit(() -> JavaProbe.probe(candidate));
+                        }
+                        for (int i = 0; i < candidates.size(); i++) {
+                            try {
+                                this.offer(probes.take().get());
+                            } catch (ExecutionException e) {
+                                CleanroomRelauncher.LOGGER.debug("Unable to probe a Java candidate: {}", e.getCause().toString());
+                            }
+                        }
+                    } finally {
+                        executor.shutdownNow();
+                    }
+                    if (!JavaProbe.hasLocated()) {
+                        JavaProbe.locate().forEach(this::offer);
+                        return null;
+                    }
+                    // What the locators found before was probed above; they look again for the next time without
+                    // holding up this one
+                    Thread locate = new Thread(JavaProbe::locate, "Relauncher Java Locators");
+                    locate.setDaemon(true);
+                    locate.setPriority(Thread.MIN_PRIORITY);
+                    locate.start();
                     return null;
                 }
 
+                private void offer(JavaProbe probe) {
+                    if (probe.majorVersion >= JavaDownloader.MINIMUM_JAVA_VERSION) {
+                        this.publish(probe);
+                    }
+                }
+
+                @Override
+                protected void process(List<JavaProbe> chunks) {
+                    for (JavaProbe probe : chunks) {
+                        if (!this.seen.add(probe.executable)) continue;
+                        this.found++;
+                        // Newest first, as they arrive
+                        int index = 0;
+                        while (index < versionModel.getSize() && versionModel.getElementAt(index).majorVersion >= probe.majorVersion) {
+                            index++;
+                        }
+                        versionModel.insertElementAt(probe, index);
+                    }
+                    if (versionModel.getSize() > 0 && !versionDropdown.isVisible()) {
+                        versionBox.setSelectedItem(null);
+                        versionDropdown.setVisible(true);
+                        versionDropdown.revalidate();
+                    }
+                }
+
                 @Override
                 protected void done() {
                     timer.stop();
                     autoDetect.setText(original);
-                    JOptionPane.showMessageDialog(RelauncherGUI.this, javaInstalls.size() + " Java " + JavaDownloader.MINIMUM_JAVA_VERSION + "+ Installs Found!", "Auto-Detection Finished", JOptionPane.INFORMATION_MESSAGE);
-                    autoDetect.setEnabled(true);
-
-                    if (!javaInstalls.isEmpty()) {
-                        versionModel.removeAllElements();
-                        for (JavaInstall install : javaInstalls) {
-                            versionModel.addElement(install);
-                        }
-                        versionDropdown.setVisible(true);
+                    try {
+                        this.get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        CleanroomRelauncher.LOGGER.warn("Java auto-detection failed", e);
                     }
+                    JOptionPane.showMessageDialog(RelauncherGUI.this, this.found + " Java " + JavaDownloader.MINIMUM_JAVA_VERSION + "+ Installs Found!", "Auto-Detection Finished", JOptionPane.INFORMATION_MESSAGE);
+                    autoDetect.setEnabled(true);
                 }
 
             }.execute();
@@ -544,12 +589,32 @@ public class RelauncherGUI extends JDialog {
                 JOptionPane.showMessageDialog(this, "Please provide a valid Java Executable in order to relaunch.", "Java Executable Not Selected", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            Runnable test = this.testJavaAndReturn();
-            if (test != null) {
-                test.run();
-                return;
-            }
-            frame.dispose();
+            relaunchButton.setEnabled(false);
+            String path = javaPath;
+            new SwingWorker<Runnable, Void>() {
+
+                @Override
+                protected Runnable doInBackground() {
+                    return RelauncherGUI.this.testJavaAndReturn(path);
+                }
+
+                @Override
+                protected void done() {
+                    relaunchButton.setEnabled(true);
+                    Runnable test;
+                    try {
+                        test = this.get();
+                    } catch (InterruptedException | ExecutionException ex) {
+                        test = () -> JOptionPane.showMessageDialog(RelauncherGUI.this, "Failed to test Java (more information in console): " + ex.getMessage(), "Java Test Failed", JOptionPane.ERROR_MESSAGE);
+                    }
+                    if (test != null) {
+                        test.run();
+                        return;
+                    }
+                    frame.dispose();
+                }
+
+            }.execute();
         });
         relaunchButtonPanel.add(relaunchButton);
 
@@ -588,14 +653,19 @@ public class RelauncherGUI extends JDialog {
         });
     }
 
-    private Runnable testJavaAndReturn() {
+    /**
+     * Probes {@code javaPath}; safe to call off the event dispatch thread.
+     *
+     * @return what to show the user if the Java is unusable, or null if it is fine
+     */
+    private Runnable testJavaAndReturn(String javaPath) {
         try {
-            JavaInstall javaInstall = JavaUtils.parseInstall(javaPath);
-            if (javaInstall.version().major() < JavaDownloader.MINIMUM_JAVA_VERSION) {
-                CleanroomRelauncher.LOGGER.fatal("Java {}+ needed, user specified Java {} instead", JavaDownloader.MINIMUM_JAVA_VERSION, javaInstall.version());
-                return () -> JOptionPane.showMessageDialog(this, "Java " + JavaDownloader.MINIMUM_JAVA_VERSION + " is the minimum version for Cleanroom. Currently, Java " + javaInstall.version().major() + " is selected.", "Old Java Version", JOptionPane.ERROR_MESSAGE);
+            JavaProbe javaProbe = JavaProbe.probe(new File(javaPath));
+            if (javaProbe.majorVersion < JavaDownloader.MINIMUM_JAVA_VERSION) {
+                CleanroomRelauncher.LOGGER.fatal("Java {}+ needed, user specified Java {} instead", JavaDownloader.MINIMUM_JAVA_VERSION, javaProbe.version);
+                return () -> JOptionPane.showMessageDialog(this, "Java " + JavaDownloader.MINIMUM_JAVA_VERSION + " is the minimum version for Cleanroom. Currently, Java " + javaProbe.majorVersion + " is selected.", "Old Java Version", JOptionPane.ERROR_MESSAGE);
             }
-            CleanroomRelauncher.LOGGER.info("Java {} specified from {}", javaInstall.version().major(), javaPath);
+            CleanroomRelauncher.LOGGER.info("Java {} specified from {}", javaProbe.majorVersion, javaPath);
         } catch (IOException e) {
             CleanroomRelauncher.LOGGER.fatal("Failed to execute Java for testing", e);
             return () -> JOptionPane.showMessageDialog(this, "Failed to test Java (more information in console): " + e.getMessage(), "Java Test Failed", JOptionPane.ERROR_MESSAGE);
@@ -603,20 +673,32 @@ public class RelauncherGUI extends JDialog {
         return null;
     }
 
-    private void testJava() {
-        try {
-            JavaInstall javaInstall = JavaUtils.parseInstall(javaPath);
-            if (javaInstall.version().major() < JavaDownloader.MINIMUM_JAVA_VERSION) {
-                CleanroomRelauncher.LOGGER.fatal("Java {}+ needed, user specified Java {} instead", JavaDownloader.MINIMUM_JAVA_VERSION, javaInstall.version());
-                JOptionPane.showMessageDialog(this, "Java " + JavaDownloader.MINIMUM_JAVA_VERSION + " is the minimum version for Cleanroom. Currently, Java " + javaInstall.version().major() + " is selected.", "Old Java Version", JOptionPane.ERROR_MESSAGE);
-                return;
+    private void testJava(Runnable whenDone) {
+        String path = javaPath;
+        new SwingWorker<Runnable, Void>() {
+
+            @Override
+            protected Runnable doInBackground() {
+                return RelauncherGUI.this.testJavaAndReturn(path);
             }
-            CleanroomRelauncher.LOGGER.info("Java {} specified from {}", javaInstall.version().major(), javaPath);
-            JOptionPane.showMessageDialog(this, "Java executable is working correctly!", "Java Test Successful", JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException e) {
-            CleanroomRelauncher.LOGGER.fatal("Failed to execute Java for testing", e);
-            JOptionPane.showMessageDialog(this, "Failed to test Java (more information in console): " + e.getMessage(), "Java Test Failed", JOptionPane.ERROR_MESSAGE);
-        }
+
+            @Override
+            protected void done() {
+                whenDone.run();
+                Runnable test;
+                try {
+                    test = this.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    test = () -> JOptionPane.showMessageDialog(RelauncherGUI.this, "Failed to test Java (more information in console): " + e.getMessage(), "Java Test Failed", JOptionPane.ERROR_MESSAGE);
+                }
+                if (test != null) {
+                    test.run();
+                } else {
+                    JOptionPane.showMessageDialog(RelauncherGUI.this, "Java executable is working correctly!", "Java Test Successful", JOptionPane.INFORMATION_MESSAGE);
+                }
+            }
+
+        }.execute();
     }
 
 }
@@ -0,0 +1,89 @@
+package com.cleanroommc.relauncher.launch;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.cleanroommc.relauncher.download.DownloadThrottle;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work for a later launch, done while the relaunched game runs and this JVM would otherwise just wait for it.
+ * Tasks run one after another on a single low-priority daemon thread, with every download rate-limited, and
+ * are cancelled when the game exits. Whatever was cut short is picked up again by the next launch, which is why
+ * tasks must only ever add complete files (resumable partial downloads, staged extractions).
+ */
+public final class BackgroundPrefetch {
+
+    // How long an exiting game waits for a task to notice the cancellation, e.g. to finish a staged extraction
+    private static final long CANCEL_GRACE_SECONDS = 5L;
+
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private Thread thread;
+
+    public BackgroundPrefetch add(String name, Task task) {
+        this.tasks.put(name, task);
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond bandwidth shared by all downloads until {@link #cancel()}, or 0 for no limit
+     */
+    public void start(long bytesPerSecond) {
+        if (this.tasks.isEmpty()) {
+            return;
+        }
+        this.thread = new Thread(() -> {
+            DownloadThrottle.limit(bytesPerSecond);
+            try {
+                for (Map.Entry<String, Task> entry : this.tasks.entrySet()) {
+                    if (DownloadThrottle.isCancelled() || Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    long startedAt = System.nanoTime();
+                    try {
+                        entry.getValue().run();
+                        CleanroomRelauncher.LOGGER.info("Finished {} in {} ms", entry.getKey(),
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+                    } catch (IOException | RuntimeException e) {
+                        if (DownloadThrottle.isCancelled()) {
+                            CleanroomRelauncher.LOGGER.info("Stopped {}, it continues on the next launch", entry.getKey());
+                        } else {
+                            CleanroomRelauncher.LOGGER.warn("Background task {} failed: {}", entry.getKey(), e.toString());
+                        }
+                    }
+                }
+            } finally {
+                DownloadThrottle.reset();
+            }
+        }, "Relauncher Prefetch");
+        this.thread.setDaemon(true);
+        this.thread.setPriority(Thread.MIN_PRIORITY);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the running task at its next read and waits briefly for it to wind down.
+     */
+    public void cancel() {
+        if (this.thread == null || !this.thread.isAlive()) {
+            return;
+        }
+        DownloadThrottle.cancel();
+        this.thread.interrupt();
+        try {
+            this.thread.join(TimeUnit.SECONDS.toMillis(CANCEL_GRACE_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Task {
+
+        void run() throws IOException;
+
+    }
+
+}
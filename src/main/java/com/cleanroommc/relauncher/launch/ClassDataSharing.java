@@ -0,0 +1,319 @@
+package com.cleanroommc.relauncher.launch;
+
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.cleanroommc.relauncher.download.java.JavaRelease;
+import net.minecraft.launchwrapper.Launch;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Manages the class-data-sharing archive of the relaunched JVM, so classes loaded on one launch are mapped
+ * straight from disk on the next instead of being parsed and verified again.
+ * <ul>
+ *     <li>Java 19 to 23: a dynamic AppCDS archive, created at exit by {@code -XX:+AutoCreateSharedArchive}.</li>
+ *     <li>Java 24: the JEP 483 AOT cache. The first launch records a training configuration, which the next
+ *     launch turns into the cache in the background while its game runs.</li>
+ *     <li>Java 25 and later: the JEP 514 AOT cache, trained and created by {@code -XX:AOTCacheOutput} in one run.</li>
+ * </ul>
+ * Archives are named after this instance, the JVM build and the class path (including the size and time stamp
+ * of every jar), so any change to those picks a new archive and the outdated one of this instance is deleted.
+ */
+public final class ClassDataSharing {
+
+    private static final long UNUSED_ARCHIVE_MILLIS = Duration.ofDays(30).toMillis();
+    private static final long CREATE_TIMEOUT_MINUTES = 5L;
+
+    private final Path archive;
+    // Recorded by this launch's game
+    private final Path trainingConfiguration;
+    // Recorded by an earlier launch's game, to be turned into the archive
+    private final Path recordedConfiguration;
+    private final List<String> jvmArguments;
+    private final List<String> arguments;
+
+    private ClassDataSharing(Path archive, Path trainingConfiguration, Path recordedConfiguration, List<String> jvmArguments,
+                             List<String> arguments) {
+        this.archive = archive;
+        this.trainingConfiguration = trainingConfiguration;
+        this.recordedConfiguration = recordedConfiguration;
+        this.jvmArguments = jvmArguments;
+        this.arguments = arguments;
+    }
+
+    /**
+     * @param javaPath     the java executable the game is relaunched with
+     * @param classPath    the class path it is relaunched with
+     * @param jvmArguments the command line so far: executable, class path and JVM options, but nothing that changes
+     *                     from one launch to the next
+     * @return the archive to use, or null if the JVM cannot share classes or the user already manages it
+     */
+    public static ClassDataSharing prepare(String javaPath, String classPath, List<String> jvmArguments) {
+        for (String argument : jvmArguments) {
+            if (argument.startsWith("-Xshare") || argument.startsWith("-XX:SharedArchiveFile")
+                    || argument.startsWith("-XX:ArchiveClassesAtExit") || argument.contains("AutoCreateSharedArchive")
+                    || argument.startsWith("-XX:AOT")) {
+                CleanroomRelauncher.LOGGER.info("Class data sharing is configured in the Java arguments, leaving it alone");
+                return null;
+            }
+        }
+        JavaRelease release = JavaRelease.ofExecutable(Paths.get(javaPath));
+        if (release == null) {
+            CleanroomRelauncher.LOGGER.debug("No release file next to {}, not managing class data sharing", javaPath);
+            return null;
+        }
+        int major = release.majorVersion();
+        if (major < 19) {
+            return null;
+        }
+        if (major < 24 && !hasBaseArchive(release.home())) {
+            CleanroomRelauncher.LOGGER.debug("{} ships no base CDS archive, not creating a dynamic one", release.home());
+            return null;
+        }
+
+        Path directory = CleanroomRelauncher.CACHE_DIR.resolve("cds");
+        String prefix = instanceKey() + "-";
+        String name = prefix + buildKey(release) + "-" + classPathKey(classPath, jvmArguments);
+        Path archive = directory.resolve(name + (major < 24 ? ".jsa" : ".aot"));
+        try {
+            Files.createDirectories(directory);
+            prune(directory, prefix, name);
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to prepare {}, launching without class data sharing: {}", directory, e.toString());
+            return null;
+        }
+
+        List<String> arguments = new ArrayList<>();
+        Path trainingConfiguration = null;
+        Path recordedConfiguration = null;
+        boolean present = Files.isRegularFile(archive);
+        if (major < 24) {
+            // The JVM maps the archive if it is valid and writes a new one at exit if it is not
+            arguments.add("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+            arguments.add("-XX:+AutoCreateSharedArchive");
+        } else if (present) {
+            arguments.add("-XX:AOTCache=" + archive.toAbsolutePath());
+        } else if (major == 24) {
+            Path configuration = directory.resolve(name + ".aotconf");
+            if (Files.isRegularFile(configuration)) {
+                // Launches without class data sharing while the background work creates the cache
+                recordedConfiguration = configuration;
+            } else {
+                trainingConfiguration = configuration;
+                arguments.add("-XX:AOTMode=record");
+                arguments.add("-XX:AOTConfiguration=" + trainingConfiguration.toAbsolutePath());
+            }
+        } else {
+            arguments.add("-XX:AOTCacheOutput=" + archive.toAbsolutePath());
+        }
+        if (present) {
+            touch(archive);
+            CleanroomRelauncher.LOGGER.info("Using class data sharing archive {}", archive.getFileName());
+        } else if (recordedConfiguration != null) {
+            CleanroomRelauncher.LOGGER.info("Creating AOT cache {} from the last launch's training while the game runs", archive.getFileName());
+        } else {
+            CleanroomRelauncher.LOGGER.info("Training class data sharing archive {}; this launch may start a little slower", archive.getFileName());
+        }
+        return new ClassDataSharing(archive, trainingConfiguration, recordedConfiguration, new ArrayList<>(jvmArguments), arguments);
+    }
+
+    /**
+     * Class data sharing only archives classes from jar files, and a non-empty directory on the class path
+     * stops the archive from being written at all, so directories are packed into a jar next to them first.
+     *
+     * @return the jar holding the directory's files, rewritten whenever a file in the directory is newer than it
+     */
+    public static Path packDirectory(Path directory) throws IOException {
+        Path jar = directory.resolveSibling(directory.getFileName() + ".jar");
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        if (Files.isRegularFile(jar)) {
+            FileTime packedAt = Files.getLastModifiedTime(jar);
+            boolean stale = false;
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).compareTo(packedAt) > 0) {
+                    stale = true;
+                    break;
+                }
+            }
+            if (!stale) {
+                return jar;
+            }
+        }
+        Path temp = jar.resolveSibling(jar.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp); JarOutputStream jarOut = new JarOutputStream(out)) {
+            for (Path file : files) {
+                JarEntry entry = new JarEntry(directory.relativize(file).toString().replace(File.separatorChar, '/'));
+                // Fixed time stamps keep the jar byte-identical for the same classes
+                entry.setTime(0L);
+                jarOut.putNextEntry(entry);
+                Files.copy(file, jarOut);
+                jarOut.closeEntry();
+            }
+        }
+        Files.move(temp, jar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return jar;
+    }
+
+    public List<String> arguments() {
+        return Collections.unmodifiableList(this.arguments);
+    }
+
+    /**
+     * @return whether an earlier launch left a Java 24 training configuration for {@link #createRecorded()}
+     */
+    public boolean hasRecorded() {
+        return this.recordedConfiguration != null;
+    }
+
+    /**
+     * Turns the training configuration an earlier launch recorded into the AOT cache, for the launch after this one.
+     * Meant for background work: interrupting the calling thread stops it, and the next launch tries again.
+     */
+    public void createRecorded() throws IOException {
+        if (this.recordedConfiguration == null || !Files.isRegularFile(this.recordedConfiguration)) {
+            return;
+        }
+        Path temp = this.archive.resolveSibling(this.archive.getFileName() + ".tmp");
+        Path log = this.archive.resolveSibling(this.archive.getFileName() + ".log");
+        List<String> command = new ArrayList<>(this.jvmArguments);
+        command.add("-XX:AOTMode=create");
+        command.add("-XX:AOTConfiguration=" + this.recordedConfiguration.toAbsolutePath());
+        command.add("-XX:AOTCache=" + temp.toAbsolutePath());
+        long startedAt = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            if (!process.waitFor(CREATE_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                CleanroomRelauncher.LOGGER.warn("Creating AOT cache {} took longer than {} minutes, giving up", this.archive.getFileName(), CREATE_TIMEOUT_MINUTES);
+                Files.deleteIfExists(this.recordedConfiguration);
+            } else if (process.exitValue() != 0 || !Files.isRegularFile(temp)) {
+                CleanroomRelauncher.LOGGER.warn("Creating AOT cache {} failed with exit code {}, see {}", this.archive.getFileName(), process.exitValue(), log);
+                Files.deleteIfExists(this.recordedConfiguration);
+            } else {
+                Files.move(temp, this.archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(log);
+                Files.deleteIfExists(this.recordedConfiguration);
+                CleanroomRelauncher.LOGGER.info("Created AOT cache {} in {} ms", this.archive.getFileName(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Creating AOT cache " + this.archive.getFileName() + " interrupted");
+        } finally {
+            process.destroyForcibly();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Keeps the training configuration this launch's game recorded for the next launch, unless the game failed:
+     * a crashed run trained on an unusual path, if it got to write one at all.
+     */
+    public void afterExit(int exitCode) {
+        if (this.trainingConfiguration == null || exitCode == 0) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(this.trainingConfiguration);
+        } catch (IOException ignored) { }
+    }
+
+    private static boolean hasBaseArchive(Path home) {
+        for (String dir : new String[] { "lib/server", "bin/server" }) {
+            Path server = home.resolve(dir);
+            if (!Files.isDirectory(server)) continue;
+            try (Stream<Path> stream = Files.list(server)) {
+                if (stream.anyMatch(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith("classes") && name.endsWith(".jsa");
+                })) {
+                    return true;
+                }
+            } catch (IOException ignored) { }
+        }
+        return false;
+    }
+
+    private static String instanceKey() {
+        return DigestUtils.sha1Hex(Launch.minecraftHome.getAbsolutePath()).substring(0, 8);
+    }
+
+    private static String buildKey(JavaRelease release) {
+        StringBuilder build = new StringBuilder()
+                .append(release.implementor()).append('|')
+                .append(release.runtimeVersion()).append('|')
+                .append(release.get("OS_ARCH"));
+        // Rebuilt or patched images of the same version still differ in their module image
+        Path modules = release.home().resolve("lib").resolve("modules");
+        try {
+            build.append('|').append(Files.size(modules)).append('|').append(Files.getLastModifiedTime(modules).toMillis());
+        } catch (IOException ignored) { }
+        return DigestUtils.sha1Hex(build.toString()).substring(0, 8);
+    }
+
+    private static String classPathKey(String classPath, List<String> jvmArguments) {
+        StringBuilder stamp = new StringBuilder();
+        for (String argument : jvmArguments) {
+            stamp.append(argument).append('\n');
+        }
+        // The JVM refuses an archive whose jars changed, so their stamps belong in the name
+        for (String entry : classPath.split(File.pathSeparator)) {
+            File file = new File(entry);
+            stamp.append(file.length()).append('|').append(file.lastModified()).append('\n');
+        }
+        return DigestUtils.sha1Hex(stamp.toString()).substring(0, 12);
+    }
+
+    /**
+     * Deletes this instance's archives for other builds or class paths, and any archive unused for a month.
+     */
+    private static void prune(Path directory, String instancePrefix, String current) throws IOException {
+        long cutoff = System.currentTimeMillis() - UNUSED_ARCHIVE_MILLIS;
+        try (Stream<Path> stream = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(current + ".")) continue;
+                boolean outdated = name.startsWith(instancePrefix);
+                if (outdated || Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                    try {
+                        // The JVM writes its archives read-only, which Windows refuses to delete
+                        path.toFile().setWritable(true);
+                        Files.deleteIfExists(path);
+                        CleanroomRelauncher.LOGGER.debug("Deleted {} class data sharing archive {}", outdated ? "outdated" : "unused", name);
+                    } catch (IOException e) {
+                        CleanroomRelauncher.LOGGER.debug("Unable to delete {}: {}", name, e.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void touch(Path archive) {
+        try {
+            Files.setLastModifiedTime(archive, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) { }
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.cleanroommc.relauncher.launch;
+
+import com.cleanroommc.javautils.JavaUtils;
+import com.cleanroommc.relauncher.CleanroomRelauncher;
+import com.cleanroommc.relauncher.download.CleanroomRelease;
+import com.cleanroommc.relauncher.download.schema.Version;
+import com.google.gson.annotations.SerializedName;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The resolved outcome of preparing a release: its class path, natives directories and main class. Preparing
+ * parses the version JSONs, checks every library, opens every natives jar and hashes the wrapper, only to arrive at
+ * the same plan as last time; a stored plan lets a warm launch skip all of that.
+ * <p>
+ * A plan is stored per release and only used for the same release, Java executable, platform, relauncher jar and
+ * class data sharing setting. It is valid while every file it names still has the size and time stamp it had when
+ * it was recorded, which costs one stat per file; anything missing or changed sends the launch down the full path,
+ * which records a new plan.
+ */
+public final class LaunchPlan {
+
+    private static final Path DIRECTORY = CleanroomRelauncher.CACHE_DIR.resolve("plans");
+    private static final String DIRECTORY_STAMP = "dir";
+
+    @SerializedName("key")
+    private String key;
+    @SerializedName("classPath")
+    private List<String> classPath;
+    @SerializedName("libraryPaths")
+    private List<String> libraryPaths;
+    @SerializedName("nativesPaths")
+    private List<String> nativesPaths;
+    @SerializedName("mainClass")
+    private String mainClass;
+    // Path -> "size|modified" of every file above, or "dir" for directories
+    @SerializedName("stamps")
+    private Map<String, String> stamps;
+
+    private LaunchPlan() { }
+
+    /**
+     * @return whether a plan was recorded for the release named {@code releaseName}, valid or not
+     */
+    public static boolean isRecorded(String releaseName) {
+        return releaseName != null && Files.isRegularFile(fileOf(releaseName));
+    }
+
+    /**
+     * @return the stored plan for launching {@code release} with {@code javaPath}, or null if there is none or
+     * anything it relies on has changed
+     */
+    public static LaunchPlan load(CleanroomRelease release, String javaPath) {
+        Path file = fileOf(release.name);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        LaunchPlan plan;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            plan = CleanroomRelauncher.GSON.fromJson(reader, LaunchPlan.class);
+        } catch (IOException | RuntimeException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to read launch plan {}: {}", file, e.toString());
+            return null;
+        }
+        if (plan == null || plan.classPath == null || plan.libraryPaths == null || plan.nativesPaths == null
+                || plan.mainClass == null || plan.stamps == null) {
+            return null;
+        }
+        if (!keyOf(release, javaPath).equals(plan.key)) {
+            CleanroomRelauncher.LOGGER.info("Launch plan for Cleanroom {} was made for another setup, preparing again", release.name);
+            return null;
+        }
+        for (Map.Entry<String, String> stamp : plan.stamps.entrySet()) {
+            if (!stamp.getValue().equals(stampOf(Paths.get(stamp.getKey())))) {
+                CleanroomRelauncher.LOGGER.info("{} changed since the launch plan was made, preparing again", stamp.getKey());
+                return null;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Stores the plan for launching {@code release} with {@code javaPath}, as prepared into {@code versions}.
+     *
+     * @param wrapperClassPath the wrapper's class path entry, ahead of the libraries
+     */
+    public static LaunchPlan record(CleanroomRelease release, String javaPath, String wrapperClassPath, List<Version> versions) {
+        LaunchPlan plan = new LaunchPlan();
+        plan.key = keyOf(release, javaPath);
+        plan.libraryPaths = versions.stream().map(version -> version.libraryPaths).flatMap(List::stream).collect(Collectors.toList());
+        plan.nativesPaths = versions.stream().map(version -> version.nativesPaths).flatMap(List::stream).collect(Collectors.toList());
+        plan.classPath = new ArrayList<>();
+        plan.classPath.add(wrapperClassPath);
+        plan.classPath.addAll(plan.libraryPaths);
+        plan.mainClass = versions.get(0).mainClass;
+        plan.stamps = new TreeMap<>();
+        for (String entry : plan.classPath) {
+            stamp(plan.stamps, Paths.get(entry));
+        }
+        stamp(plan.stamps, Paths.get(javaPath));
+        for (String natives : plan.nativesPaths) {
+            Path dir = Paths.get(natives);
+            stamp(plan.stamps, dir);
+            // Extracted natives are quarantined one by one, so each of them counts
+            if (Files.isDirectory(dir)) {
+                try (Stream<Path> walk = Files.walk(dir)) {
+                    walk.filter(Files::isRegularFile).forEach(path -> stamp(plan.stamps, path));
+                } catch (IOException e) {
+                    CleanroomRelauncher.LOGGER.debug("Unable to list {}: {}", dir, e.toString());
+                }
+            }
+        }
+
+        Path file = fileOf(release.name);
+        try {
+            Files.createDirectories(DIRECTORY);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                CleanroomRelauncher.GSON.toJson(plan, writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            CleanroomRelauncher.LOGGER.warn("Unable to save launch plan {}: {}", file, e.toString());
+        }
+        return plan;
+    }
+
+    public String classPath() {
+        return String.join(File.pathSeparator, this.classPath);
+    }
+
+    public String libraryPath() {
+        return String.join(File.pathSeparator, this.nativesPaths);
+    }
+
+    public String mainClass() {
+        return this.mainClass;
+    }
+
+    public List<String> libraryPaths() {
+        return Collections.unmodifiableList(this.libraryPaths);
+    }
+
+    public List<String> nativesPaths() {
+        return Collections.unmodifiableList(this.nativesPaths);
+    }
+
+    private static Path fileOf(String releaseName) {
+        return DIRECTORY.resolve(releaseName.replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+    }
+
+    private static String keyOf(CleanroomRelease release, String javaPath) {
+        // A new relauncher jar may come with a different wrapper or a different way of preparing
+        File relauncherJar = JavaUtils.jarLocationOf(CleanroomRelauncher.class);
+        return DigestUtils.sha1Hex(String.join("|",
+                release.tagName,
+                Paths.get(javaPath).toAbsolutePath().toString(),
+                System.getProperty("os.name"),
+                System.getProperty("os.arch"),
+                String.valueOf(CleanroomRelauncher.CONFIG.isClassDataSharing()),
+                CleanroomRelauncher.CACHE_DIR.toAbsolutePath().toString(),
+                relauncherJar == null ? "" : relauncherJar.getAbsolutePath(),
+                relauncherJar == null ? "" : String.valueOf(relauncherJar.length()),
+                relauncherJar == null ? "" : String.valueOf(relauncherJar.lastModified())));
+    }
+
+    private static void stamp(Map<String, String> stamps, Path path) {
+        String stamp = stampOf(path);
+        if (stamp != null) {
+            stamps.put(path.toAbsolutePath().toString(), stamp);
+        }
+    }
+
+    private static String stampOf(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isDirectory()) {
+                return DIRECTORY_STAMP;
+            }
+            return attributes.size() + "|" + attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+}